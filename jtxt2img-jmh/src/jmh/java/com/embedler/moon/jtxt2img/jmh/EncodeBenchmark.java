@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.jmh;
+
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.encoder.ImageWriterPool;
+import com.embedler.moon.jtxt2img.encoder.IndexedGifEncoder;
+import com.embedler.moon.jtxt2img.encoder.IndexedPngEncoder;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of a rendered placeholder per {@link ImgTextProperties.IMG_FORMAT}: plain {@link ImageIO},
+ * the pooled writers and the built-in encoder the library picks for the format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"PNG", "JPG", "GIF"})
+    public ImgTextProperties.IMG_FORMAT format;
+
+    @Param({"300x250", "1920x1080"})
+    public String box;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        String[] size = box.split("x");
+        image = ImageProcessor.forSpec(RenderSpec.withText("Hello").size(Integer.parseInt(size[0]), Integer.parseInt(size[1]))
+                .backgroundColor(0xeeeeee).foregroundColor(0x333333)).createBufferedImage();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MappedImageFactory.release(image);
+    }
+
+    @Benchmark
+    public long imageIo() throws IOException {
+        NullOutputStream outputStream = new NullOutputStream();
+        ImageIO.write(image, format.name().toLowerCase(), outputStream);
+        return outputStream.getCount();
+    }
+
+    @Benchmark
+    public long writerPool() throws IOException {
+        NullOutputStream outputStream = new NullOutputStream();
+        ImageWriterPool.shared().write(image, format, outputStream, EncodeOptions.DEFAULT);
+        return outputStream.getCount();
+    }
+
+    /**
+     * Same as {@link #writerPool()} for JPG, which has no built-in encoder.
+     */
+    @Benchmark
+    public long nativeEncoder() throws IOException {
+        NullOutputStream outputStream = new NullOutputStream();
+        if (format == ImgTextProperties.IMG_FORMAT.PNG) {
+            IndexedPngEncoder.get().encode(image, outputStream);
+        } else if (format == ImgTextProperties.IMG_FORMAT.GIF) {
+            IndexedGifEncoder.get().encode(image, outputStream);
+        } else {
+            ImageWriterPool.shared().write(image, format, outputStream, EncodeOptions.DEFAULT);
+        }
+        return outputStream.getCount();
+    }
+}
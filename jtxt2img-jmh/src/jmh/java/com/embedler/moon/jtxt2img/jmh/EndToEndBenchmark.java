@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.jmh;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@code generate().write()} as a caller sees it, with and without the encoded image cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"PNG", "JPG", "GIF"})
+    public ImgTextProperties.IMG_FORMAT format;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private EncodedImageCache cache;
+
+    @Setup
+    public void setup() {
+        cache = cached ? new EncodedImageCache(16 * 1024 * 1024) : null;
+    }
+
+    @Benchmark
+    public long generateAndWrite() {
+        NullOutputStream outputStream = new NullOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("Hello")
+                .width(300)
+                .height(250)
+                .backgroundColor("eee")
+                .foregroundColor("333")
+                .format(format)
+                .cache(cache)) {
+            jTxt2Img.generate().write(outputStream);
+        }
+        return outputStream.getCount();
+    }
+}
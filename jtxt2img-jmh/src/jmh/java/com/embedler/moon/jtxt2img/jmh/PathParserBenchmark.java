@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.jmh;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.PlaceholderPathParser;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * {@link PlaceholderPathParser} against matching the same path with {@link CoreHelper#SIZE_REGEXP}
+ * and {@link CoreHelper#COLOR_REGEXP} and resolving the properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathParserBenchmark {
+
+    @Param({"/300x250", "/300x250/ff0000/000/Hello.png"})
+    public String path;
+
+    @Benchmark
+    public RenderSpec parser() {
+        return PlaceholderPathParser.parse(path);
+    }
+
+    @Benchmark
+    public RenderSpec regex() {
+        String[] segments = path.substring(1).split("/");
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setFormat(ImgTextProperties.IMG_FORMAT.PNG);
+        Matcher size = CoreHelper.SIZE_REGEXP.matcher(segments[0]);
+        if (!size.matches()) {
+            throw new IllegalArgumentException(path);
+        }
+        imgTextProperties.setWidth(Integer.parseInt(size.group(1)));
+        imgTextProperties.setHeight(size.group(3) != null ? Integer.parseInt(size.group(3)) : imgTextProperties.getWidth());
+        int i = 1;
+        if (i < segments.length && CoreHelper.COLOR_REGEXP.matcher(segments[i]).matches()) {
+            imgTextProperties.setBgColor(segments[i++]);
+        }
+        if (i < segments.length && CoreHelper.COLOR_REGEXP.matcher(segments[i]).matches()) {
+            imgTextProperties.setFgColor(segments[i++]);
+        }
+        if (i < segments.length) {
+            String text = segments[i];
+            int dot = text.lastIndexOf('.');
+            if (dot > 0) {
+                imgTextProperties.setFormat(ImgTextProperties.IMG_FORMAT.valueOf(text.substring(dot + 1).toUpperCase()));
+                text = text.substring(0, dot);
+            }
+            imgTextProperties.setText(text);
+        }
+        return RenderSpec.of(imgTextProperties);
+    }
+}
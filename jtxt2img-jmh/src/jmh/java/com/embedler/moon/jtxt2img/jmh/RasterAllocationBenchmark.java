@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.jmh;
+
+import com.embedler.moon.jtxt2img.mmap.AdaptiveRasterStorage;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MappedImageFactory} allocation and release of a 1 bit placeholder raster per size and storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterAllocationBenchmark {
+
+    @Param({"64", "512", "3500"})
+    public int size;
+
+    @Param({"HEAP", "DIRECT", "MAPPED", "ADAPTIVE"})
+    public String storage;
+
+    private RasterStorage rasterStorage;
+    private IndexColorModel colorModel;
+
+    @Setup
+    public void setup() {
+        rasterStorage = "ADAPTIVE".equals(storage) ? AdaptiveRasterStorage.fromSystemProperties() : StandardRasterStorage.valueOf(storage);
+        colorModel = new IndexColorModel(1, 2, new byte[]{0, -1}, new byte[]{0, -1}, new byte[]{0, -1});
+    }
+
+    @Benchmark
+    public boolean allocate() {
+        BufferedImage image = MappedImageFactory.createCompatibleMappedImage(size, size, BufferedImage.TYPE_BYTE_BINARY, colorModel, rasterStorage);
+        return MappedImageFactory.release(image);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.jmh;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.TextFitter;
+import com.embedler.moon.jtxt2img.TextWrapper;
+import com.embedler.moon.jtxt2img.cache.FontMetricsCache;
+import com.embedler.moon.jtxt2img.cache.LineBreakCache;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Font size fitting, i.e. {@code ImageProcessor.calculateImageTextSettings} without and with the metrics cache,
+ * and the same for wrapped text made of words with and without cached line breaks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextFitterBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int textLength;
+
+    @Param({"120x60", "300x250", "1920x1080"})
+    public String box;
+
+    private String text;
+    private String words;
+    private int width;
+    private int height;
+    private Font font;
+    private FontMetricsCache fontMetricsCache;
+
+    @Setup
+    public void setup() {
+        text = StringUtils.repeat("Wq", textLength).substring(0, textLength);
+        words = StringUtils.repeat("Wq ", textLength).substring(0, textLength).trim();
+        width = Integer.parseInt(StringUtils.substringBefore(box, "x"));
+        height = Integer.parseInt(StringUtils.substringAfter(box, "x"));
+        font = CoreHelper.DEF_PLACEHOLDER_FONT;
+        fontMetricsCache = new FontMetricsCache(16);
+        fontMetricsCache.put(font, text, width, height, TextFitter.fit(text, font, width, height));
+    }
+
+    @Benchmark
+    public ImageProcessor.ImageTextSettings fit() {
+        return TextFitter.fit(text, font, width, height);
+    }
+
+    @Benchmark
+    public ImageProcessor.ImageTextSettings cached() {
+        return fontMetricsCache.get(font, text, width, height);
+    }
+
+    @Benchmark
+    public ImageProcessor.ImageTextSettings wrap() {
+        return TextWrapper.fit(words, font, width, height);
+    }
+
+    @Benchmark
+    public ImageProcessor.ImageTextSettings wrapUncached() {
+        LineBreakCache.shared().clear();
+        return TextWrapper.fit(words, font, width, height);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.server;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.PlaceholderPathParser;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.DiskImageCache;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.io.PooledByteBuffer;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Maps placeholder paths to renders. Runs on the HTTP dispatcher thread, so everything but the
+ * render itself must stay cheap.
+ */
+class PlaceholderHandler implements HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlaceholderHandler.class);
+
+    static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final Executor workers;
+    private final EncodedImageCache cache;
+    private final DiskImageCache diskCache;
+    private final RenderSpec baseSpec;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    PlaceholderHandler(Executor workers, EncodedImageCache cache, DiskImageCache diskCache, RenderSpec baseSpec,
+                       int maxWidth, int maxHeight) {
+        this.workers = workers;
+        this.cache = cache;
+        this.diskCache = diskCache;
+        this.baseSpec = baseSpec;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendEmpty(exchange, 405);
+                return;
+            }
+
+            final RenderSpec renderSpec;
+            try {
+                renderSpec = PlaceholderPathParser.parse(exchange.getRequestURI().getRawPath(), baseSpec, maxWidth, maxHeight);
+            } catch (IllegalArgumentException e) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+
+            final String etag = etag(renderSpec);
+            Headers responseHeaders = exchange.getResponseHeaders();
+            responseHeaders.set("ETag", etag);
+            responseHeaders.set("Cache-Control", CACHE_CONTROL);
+            if (matches(exchange.getRequestHeaders().get("If-None-Match"), etag)) {
+                sendEmpty(exchange, 304);
+                return;
+            }
+
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        render(exchange, renderSpec, "HEAD".equals(method));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                responseHeaders.remove("ETag");
+                responseHeaders.remove("Cache-Control");
+                responseHeaders.set("Retry-After", "1");
+                sendEmpty(exchange, 503);
+            }
+        } catch (IOException | RuntimeException e) {
+            exchange.close();
+            throw e;
+        }
+    }
+
+    private void render(HttpExchange exchange, RenderSpec renderSpec, boolean head) {
+        try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(renderSpec).cache(cache).diskCache(diskCache).generate();
+             PooledByteBuffer encoded = jTxt2Img.encodeToPooledBuffer()) {
+            exchange.getResponseHeaders().set("Content-Type", contentType(jTxt2Img.getEncodedFormat()));
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(encoded.size()));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, encoded.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                WritableByteChannel channel = Channels.newChannel(body);
+                ByteBuffer bytes = encoded.buffer();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                // the client went away, nothing left to answer
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Can't send placeholder {}", renderSpec, e);
+                }
+            }
+        } catch (Exception e) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error("Can't render placeholder {}", renderSpec, e);
+            }
+            try {
+                exchange.getResponseHeaders().remove("ETag");
+                exchange.getResponseHeaders().remove("Cache-Control");
+                sendEmpty(exchange, 500);
+            } catch (IOException | RuntimeException ignored) {
+                // headers may already be sent
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    /**
+     * Strong validator from the {@link EncodedImageCache.Key#contentHash() content hash}, which covers everything
+     * that changes the encoded bytes, so it is stable across restarts and servers.
+     */
+    static String etag(RenderSpec renderSpec) {
+        byte[] hash = EncodedImageCache.Key.of(renderSpec).contentHash();
+        StringBuilder sb = new StringBuilder(18).append('"');
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return sb.append('"').toString();
+    }
+
+    static boolean matches(List<String> ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static String contentType(ImgTextProperties.IMG_FORMAT format) {
+        switch (format) {
+            case PNG:
+                return "image/png";
+            case GIF:
+                return "image/gif";
+            default:
+                return "image/jpeg";
+        }
+    }
+}
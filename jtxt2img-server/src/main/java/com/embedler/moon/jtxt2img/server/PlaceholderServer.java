@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.server;
+
+import com.embedler.moon.jtxt2img.PlaceholderPathParser;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.DiskImageCache;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded placeholder service on the JDK HTTP server, e.g. {@code GET /300x250/ff0000/000/Hello.png},
+ * see {@link PlaceholderPathParser} for the grammar.
+ * <p>
+ * Requests are parsed and conditional requests answered on the dispatcher thread, renders run on a bounded
+ * worker pool; when its queue is full the server answers {@code 503} instead of queueing without limit.
+ */
+public class PlaceholderServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlaceholderServer.class);
+
+    public static final int DEF_PORT = 8080;
+    public static final int DEF_QUEUE_CAPACITY = 256;
+    public static final int DEF_BACKLOG = 1024;
+    public static final long DEF_CACHE_BYTES = 64L * 1024 * 1024;
+    public static final long DEF_DISK_CACHE_BYTES = 1024L * 1024 * 1024;
+
+    private String host = "0.0.0.0";
+    private int port = DEF_PORT;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = DEF_QUEUE_CAPACITY;
+    private int backlog = DEF_BACKLOG;
+    private int maxWidth = PlaceholderPathParser.DEF_MAX_WIDTH;
+    private int maxHeight = PlaceholderPathParser.DEF_MAX_HEIGHT;
+    private EncodedImageCache cache = new EncodedImageCache(DEF_CACHE_BYTES);
+    private DiskImageCache diskCache;
+    private RenderSpec baseSpec;
+
+    private HttpServer httpServer;
+    private ThreadPoolExecutor workerPool;
+
+    private PlaceholderServer() {
+    }
+
+    public static PlaceholderServer create() {
+        return new PlaceholderServer();
+    }
+
+    public PlaceholderServer host(final String host) {
+        Validate.notBlank(host, "Host must not be blank");
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * @param port listening port, 0 picks a free one, see {@link #getPort()}
+     */
+    public PlaceholderServer port(final int port) {
+        Validate.isTrue(port >= 0 && port <= 65535, "Invalid port: %d", port);
+        this.port = port;
+        return this;
+    }
+
+    public PlaceholderServer workers(final int workers) {
+        Validate.isTrue(workers > 0, "Workers must be positive: %d", workers);
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * Renders waiting for a worker, more are rejected with {@code 503}.
+     */
+    public PlaceholderServer queueCapacity(final int queueCapacity) {
+        Validate.isTrue(queueCapacity > 0, "Queue capacity must be positive: %d", queueCapacity);
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public PlaceholderServer backlog(final int backlog) {
+        Validate.isTrue(backlog > 0, "Backlog must be positive: %d", backlog);
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * Largest size served, bigger requests are answered with {@code 400}. Independent of
+     * {@link com.embedler.moon.jtxt2img.CoreHelper#setMaxSize}, every request is rendered in memory.
+     * Defaults to {@value PlaceholderPathParser#DEF_MAX_WIDTH}x{@value PlaceholderPathParser#DEF_MAX_HEIGHT}.
+     */
+    public PlaceholderServer maxSize(final int maxWidth, final int maxHeight) {
+        Validate.isTrue(maxWidth > 0 && maxHeight > 0, "Invalid max size: %dx%d", maxWidth, maxHeight);
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        return this;
+    }
+
+    /**
+     * Cache of encoded images, {@code null} disables caching. Defaults to {@value #DEF_CACHE_BYTES} bytes.
+     */
+    public PlaceholderServer cache(final EncodedImageCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Persistent cache behind the in-memory one, so restarted servers don't render hot placeholders again.
+     * Disabled by default, the server doesn't close it.
+     */
+    public PlaceholderServer diskCache(final DiskImageCache diskCache) {
+        this.diskCache = diskCache;
+        return this;
+    }
+
+    /**
+     * Font, encode options and other values the URL doesn't set.
+     */
+    public PlaceholderServer baseSpec(final RenderSpec baseSpec) {
+        this.baseSpec = baseSpec;
+        return this;
+    }
+
+    public synchronized PlaceholderServer start() throws IOException {
+        Validate.validState(httpServer == null, "Server is already started");
+        workerPool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new WorkerThreadFactory());
+        workerPool.allowCoreThreadTimeOut(true);
+        httpServer = HttpServer.create(new InetSocketAddress(host, port), backlog);
+        httpServer.createContext("/", new PlaceholderHandler(workerPool, cache, diskCache, baseSpec, maxWidth, maxHeight));
+        // handlers run on the dispatcher thread and hand renders off to the worker pool
+        httpServer.setExecutor(null);
+        httpServer.start();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Placeholder server listening on {}:{} with {} workers", host, getPort(), workers);
+        }
+        return this;
+    }
+
+    public synchronized int getPort() {
+        Validate.validState(httpServer != null, "Server is not started");
+        return httpServer.getAddress().getPort();
+    }
+
+    public synchronized void stop(final int delaySeconds) {
+        if (httpServer == null) {
+            return;
+        }
+        httpServer.stop(delaySeconds);
+        workerPool.shutdown();
+        httpServer = null;
+        workerPool = null;
+    }
+
+    @Override
+    public void close() {
+        stop(0);
+    }
+
+    /**
+     * Starts the server, configured by the {@code jtxt2img.server.port}, {@code .workers} and {@code .queueCapacity}
+     * system properties; the port can also be passed as the first argument. {@code jtxt2img.server.diskCache}
+     * names a directory for the persistent cache, bounded by {@code .diskCacheBytes}; {@code .maxWidth} and
+     * {@code .maxHeight} limit the served size.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("jtxt2img.server.port", DEF_PORT);
+        String diskCacheDirectory = System.getProperty("jtxt2img.server.diskCache");
+        final PlaceholderServer server = PlaceholderServer.create()
+                .port(port)
+                .workers(Integer.getInteger("jtxt2img.server.workers", Runtime.getRuntime().availableProcessors()))
+                .queueCapacity(Integer.getInteger("jtxt2img.server.queueCapacity", DEF_QUEUE_CAPACITY))
+                .maxSize(Integer.getInteger("jtxt2img.server.maxWidth", PlaceholderPathParser.DEF_MAX_WIDTH),
+                        Integer.getInteger("jtxt2img.server.maxHeight", PlaceholderPathParser.DEF_MAX_HEIGHT))
+                .cache(new EncodedImageCache(Long.getLong("jtxt2img.server.cacheBytes", DEF_CACHE_BYTES)))
+                .diskCache(diskCacheDirectory != null ? DiskImageCache.open(new File(diskCacheDirectory),
+                        Long.getLong("jtxt2img.server.diskCacheBytes", DEF_DISK_CACHE_BYTES)) : null)
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.stop(1);
+            }
+        }));
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "jtxt2img-server-" + counter.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.server;
+
+import com.embedler.moon.jtxt2img.BackgroundTemplate;
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+
+public class PlaceholderServerTest {
+
+    private PlaceholderServer server;
+
+    @Before
+    public void before() throws IOException {
+        server = PlaceholderServer.create().host("127.0.0.1").port(0).workers(2).queueCapacity(8).start();
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void etagFollowsTemplateVersion() throws IOException {
+        File template = File.createTempFile("jtxt2img-template", ".png");
+        try {
+            RenderSpec renderSpec = RenderSpec.withText("Template").backgroundTemplate(BackgroundTemplate.file(template));
+            String etag = PlaceholderHandler.etag(renderSpec);
+            Assert.assertEquals(etag, PlaceholderHandler.etag(renderSpec));
+            Assert.assertEquals(18, etag.length());
+
+            Files.write(template.toPath(), new byte[10]);
+            Assert.assertNotEquals(etag, PlaceholderHandler.etag(renderSpec));
+        } finally {
+            Assert.assertTrue(template.delete());
+        }
+    }
+
+    @Test
+    public void rendersAndRevalidates() throws IOException {
+        HttpURLConnection connection = open("/300x250/ff0000/000/Hello.png");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("image/png", connection.getContentType());
+        Assert.assertEquals(PlaceholderHandler.CACHE_CONTROL, connection.getHeaderField("Cache-Control"));
+        String etag = connection.getHeaderField("ETag");
+        Assert.assertNotNull(etag);
+        byte[] body = read(connection.getInputStream());
+        Assert.assertEquals(connection.getContentLength(), body.length);
+        Assert.assertEquals((byte) 0x89, body[0]);
+
+        connection = open("/300x250/ff0000/000/Hello.png");
+        Assert.assertEquals(etag, connection.getHeaderField("ETag"));
+        read(connection.getInputStream());
+
+        connection = open("/300x250/ff0000/000/Hello.png");
+        connection.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, connection.getResponseCode());
+
+        connection = open("/300x250/ff0000/000/Hello.gif");
+        Assert.assertEquals("image/gif", connection.getContentType());
+        Assert.assertNotEquals(etag, connection.getHeaderField("ETag"));
+        read(connection.getInputStream());
+    }
+
+    @Test
+    public void rejectsInvalidRequests() throws IOException {
+        Assert.assertEquals(400, open("/99999x1").getResponseCode());
+        HttpURLConnection connection = open("/10x10");
+        connection.setRequestMethod("DELETE");
+        Assert.assertEquals(405, connection.getResponseCode());
+
+        // raising the library limit for streamed banners must not widen what the server renders
+        try {
+            CoreHelper.setMaxSize(20000, 20000);
+            Assert.assertEquals(400, open("/20000x1").getResponseCode());
+        } finally {
+            CoreHelper.setMaxSize(CoreHelper.DEF_PLACEHOLDER_MAX_WIDTH, CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT);
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http", "127.0.0.1", server.getPort(), path).openConnection();
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
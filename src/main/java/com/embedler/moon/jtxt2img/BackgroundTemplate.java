@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.cache.TemplateCache;
+import org.apache.commons.lang3.Validate;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * A background image read from a file or a classpath resource, scaled to cover the placeholder and
+ * cropped to its center. Templates are compared by location. {@link TemplateCache} and the image caches
+ * also key by {@link #getVersion()}, so replacing a template file needs no cache clearing.
+ */
+public final class BackgroundTemplate {
+
+    private final String location;
+    private final boolean resource;
+
+    private BackgroundTemplate(String location, boolean resource) {
+        this.location = location;
+        this.resource = resource;
+    }
+
+    public static BackgroundTemplate file(final File file) {
+        Validate.notNull(file, "File must not be null");
+        return new BackgroundTemplate(file.getAbsolutePath(), false);
+    }
+
+    /**
+     * @param name resource name relative to the classpath root, e.g. {@code "templates/brand.png"}
+     */
+    public static BackgroundTemplate resource(final String name) {
+        Validate.notBlank(name, "Resource name must not be blank");
+        return new BackgroundTemplate(name.startsWith("/") ? name.substring(1) : name, true);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public boolean isResource() {
+        return resource;
+    }
+
+    /**
+     * Size and modification time of the template source, which change when the template is replaced.
+     *
+     * @return e.g. {@code "1024@1445000000000"}, {@code "-1@0"} for a missing template
+     */
+    public String getVersion() {
+        return resource ? CoreHelper.getResourceVersion(location) : CoreHelper.getVersion(new File(location));
+    }
+
+    /**
+     * Decodes the template and scales it to the given size, see {@link TemplateCache#get} for the cached variant.
+     *
+     * @return an opaque RGB image of exactly the given size
+     */
+    public BufferedImage render(final int width, final int height) {
+        Validate.isTrue(width > 0 && height > 0, "Invalid image size: %dx%d", width, height);
+        return scale(decode(), width, height);
+    }
+
+    private BufferedImage decode() {
+        try {
+            BufferedImage image;
+            if (resource) {
+                URL url = CoreHelper.getResource(location);
+                Validate.isTrue(url != null, "Template resource not found: %s", location);
+                try (InputStream inputStream = url.openStream()) {
+                    image = ImageIO.read(inputStream);
+                }
+            } else {
+                image = ImageIO.read(new File(location));
+            }
+            if (image == null) {
+                throw new JTxt2ImgIoRuntimeException("No image reader for template " + location);
+            }
+            return image;
+        } catch (IOException e) {
+            throw new JTxt2ImgIoRuntimeException("Can't read template " + location, e);
+        }
+    }
+
+    static BufferedImage scale(BufferedImage source, int width, int height) {
+        double scale = Math.max((double) width / source.getWidth(), (double) height / source.getHeight());
+        // halve in steps first, a single bilinear pass skips source pixels when shrinking a lot
+        BufferedImage current = source;
+        while (scale < 0.5 && current.getWidth() > 1 && current.getHeight() > 1) {
+            int halfWidth = Math.max(1, current.getWidth() / 2);
+            int halfHeight = Math.max(1, current.getHeight() / 2);
+            scale *= (double) current.getWidth() / halfWidth;
+            BufferedImage half = new BufferedImage(halfWidth, halfHeight, BufferedImage.TYPE_INT_RGB);
+            draw(half, current, 0, 0, halfWidth, halfHeight);
+            current = half;
+        }
+
+        int scaledWidth = Math.max(width, (int) Math.ceil(current.getWidth() * scale));
+        int scaledHeight = Math.max(height, (int) Math.ceil(current.getHeight() * scale));
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        draw(result, current, (width - scaledWidth) / 2, (height - scaledHeight) / 2, scaledWidth, scaledHeight);
+        return result;
+    }
+
+    private static void draw(BufferedImage target, BufferedImage source, int x, int y, int width, int height) {
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // transparent templates are flattened onto white
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, target.getWidth(), target.getHeight());
+            g.drawImage(source, x, y, width, height, null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BackgroundTemplate)) {
+            return false;
+        }
+        BackgroundTemplate that = (BackgroundTemplate) o;
+        return resource == that.resource && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * location.hashCode() + (resource ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return (resource ? "classpath:" : "file:") + location;
+    }
+}
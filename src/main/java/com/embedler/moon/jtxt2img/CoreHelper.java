@@ -22,6 +22,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.regex.Pattern;
 
 public enum CoreHelper {
@@ -44,9 +50,97 @@ public enum CoreHelper {
     public static final Integer DEF_PLACEHOLDER_MIN_WIDTH = 1;
     public static final Integer DEF_PLACEHOLDER_MIN_HEIGHT = 1;
 
+    public static final String MAX_WIDTH_PROPERTY = "jtxt2img.maxWidth";
+    public static final String MAX_HEIGHT_PROPERTY = "jtxt2img.maxHeight";
+    /**
+     * Upper bound for configured limits, the largest size a GIF can describe.
+     */
+    public static final int MAX_IMAGE_DIMENSION = 0xffff;
+
+    private static volatile int maxWidth = maxDimension(MAX_WIDTH_PROPERTY, DEF_PLACEHOLDER_MAX_WIDTH);
+    private static volatile int maxHeight = maxDimension(MAX_HEIGHT_PROPERTY, DEF_PLACEHOLDER_MAX_HEIGHT);
+
     public static final int DEF_PLACEHOLDER_FONT_SIZE = 700;
     public static final Font DEF_PLACEHOLDER_FONT = new Font("Courier New Bold", Font.BOLD, DEF_PLACEHOLDER_FONT_SIZE);
 
+    /**
+     * Largest accepted image width, {@value #MAX_WIDTH_PROPERTY} or {@link #DEF_PLACEHOLDER_MAX_WIDTH} by default.
+     */
+    public static int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Largest accepted image height, {@value #MAX_HEIGHT_PROPERTY} or {@link #DEF_PLACEHOLDER_MAX_HEIGHT} by default.
+     */
+    public static int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Changes the per-image limits at runtime, sizes above the defaults are best rendered with
+     * {@link JTxt2Img#writeStreaming(OutputStream, int)}.
+     */
+    public static void setMaxSize(final int width, final int height) {
+        Validate.isTrue(width >= DEF_PLACEHOLDER_MIN_WIDTH && width <= MAX_IMAGE_DIMENSION, "Max width is out of range: %d", width);
+        Validate.isTrue(height >= DEF_PLACEHOLDER_MIN_HEIGHT && height <= MAX_IMAGE_DIMENSION, "Max height is out of range: %d", height);
+        maxWidth = width;
+        maxHeight = height;
+    }
+
+    private static int maxDimension(String property, int defaultValue) {
+        int value = Integer.getInteger(property, defaultValue);
+        return value >= 1 && value <= MAX_IMAGE_DIMENSION ? value : defaultValue;
+    }
+
+    /**
+     * Looks a resource up with the context class loader first, then with the library's own.
+     *
+     * @return the resource or {@code null} if neither has it
+     */
+    static URL getResource(String name) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        URL url = classLoader != null ? classLoader.getResource(name) : null;
+        return url != null ? url : CoreHelper.class.getClassLoader().getResource(name);
+    }
+
+    /**
+     * Size and modification time of a file, which change when it is replaced.
+     *
+     * @return e.g. {@code "1024@1445000000000"}, {@code "-1@0"} for a missing file
+     */
+    static String getVersion(File file) {
+        return file.isFile() ? version(file.length(), file.lastModified()) : version(-1, 0);
+    }
+
+    /**
+     * Like {@link #getVersion(File)} for a resource, see {@link #getResource(String)}.
+     */
+    static String getResourceVersion(String name) {
+        URL url = getResource(name);
+        if (url == null) {
+            return version(-1, 0);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                // a file connection opens the file just to read its length
+                return getVersion(new File(url.toURI()));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // fall through to the connection
+            }
+        }
+        try {
+            URLConnection connection = url.openConnection();
+            return version(connection.getContentLengthLong(), connection.getLastModified());
+        } catch (IOException e) {
+            return version(-1, 0);
+        }
+    }
+
+    private static String version(long length, long lastModified) {
+        return length + "@" + lastModified;
+    }
+
     public static Color hex2Rgb(String colorStr) {
         Validate.notBlank(colorStr, "Color string must not be null");
         String _color = StringUtils.rightPad(StringUtils.removeStart(colorStr, "#"), 6, colorStr.charAt(colorStr.length() - 1));
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.encoder.IndexedPngEncoder;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Immutable per format encoding parameters, e.g.
+ * {@code EncodeOptions.DEFAULT.jpegQuality(0.9f).progressive(true)}.
+ */
+public final class EncodeOptions {
+
+    public static final float DEF_JPEG_QUALITY = 0.75f;
+
+    public static final int DEF_PALETTE_BITS = 1;
+
+    public static final EncodeOptions DEFAULT = new EncodeOptions(DEF_JPEG_QUALITY, IndexedPngEncoder.DEF_COMPRESSION_LEVEL, false, DEF_PALETTE_BITS);
+
+    private final float jpegQuality;
+    private final int pngCompressionLevel;
+    private final boolean progressive;
+    private final int paletteBits;
+
+    private EncodeOptions(float jpegQuality, int pngCompressionLevel, boolean progressive, int paletteBits) {
+        this.jpegQuality = jpegQuality;
+        this.pngCompressionLevel = pngCompressionLevel;
+        this.progressive = progressive;
+        this.paletteBits = paletteBits;
+    }
+
+    /**
+     * @param jpegQuality from 0 (smallest) to 1 (best quality)
+     */
+    public EncodeOptions jpegQuality(final float jpegQuality) {
+        Validate.isTrue(jpegQuality >= 0f && jpegQuality <= 1f, "JPEG quality must be between 0 and 1: %s", jpegQuality);
+        return new EncodeOptions(jpegQuality, pngCompressionLevel, progressive, paletteBits);
+    }
+
+    /**
+     * @param pngCompressionLevel deflate level from 0 (fastest) to 9 (smallest)
+     */
+    public EncodeOptions pngCompressionLevel(final int pngCompressionLevel) {
+        Validate.isTrue(pngCompressionLevel >= 0 && pngCompressionLevel <= 9, "PNG compression level must be between 0 and 9: %d", pngCompressionLevel);
+        return new EncodeOptions(jpegQuality, pngCompressionLevel, progressive, paletteBits);
+    }
+
+    /**
+     * Progressive JPEG, interlaced PNG and GIF.
+     */
+    public EncodeOptions progressive(final boolean progressive) {
+        return new EncodeOptions(jpegQuality, pngCompressionLevel, progressive, paletteBits);
+    }
+
+    /**
+     * Depth of the rendered palette: 1 bit draws aliased two color text, 2 and 4 bits draw anti-aliased text
+     * with 4 or 16 shades between the background and foreground colors.
+     */
+    public EncodeOptions paletteBits(final int paletteBits) {
+        Validate.isTrue(paletteBits == 1 || paletteBits == 2 || paletteBits == 4, "Palette depth must be 1, 2 or 4 bits: %d", paletteBits);
+        return new EncodeOptions(jpegQuality, pngCompressionLevel, progressive, paletteBits);
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public int getPaletteBits() {
+        return paletteBits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EncodeOptions)) {
+            return false;
+        }
+        EncodeOptions that = (EncodeOptions) o;
+        return Float.compare(that.jpegQuality, jpegQuality) == 0 &&
+                pngCompressionLevel == that.pngCompressionLevel &&
+                progressive == that.progressive &&
+                paletteBits == that.paletteBits;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(jpegQuality);
+        result = 31 * result + pngCompressionLevel;
+        result = 31 * result + (progressive ? 1 : 0);
+        result = 31 * result + paletteBits;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EncodeOptions: jpegQuality = %s pngCompressionLevel = %s progressive = %s paletteBits = %s",
+                jpegQuality, pngCompressionLevel, progressive, paletteBits);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fonts loaded once from files or the classpath and resolved by a logical name, so renders don't depend
+ * on the fonts installed on the host, e.g. {@code JTxt2Img.withText("Hi").font("brand")}.
+ * <p>
+ * Sizes are derived from the registered instance with {@link Font#deriveFont(float)} and cached per font,
+ * see {@link #derive(Font, int)}. A loaded font can equal an installed one of the same face name, so caches key
+ * fonts by {@link #identity(Font)} as well: replacing a registered font never hits renders of the old one.
+ */
+public final class FontRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FontRegistry.class);
+
+    public static final String DERIVED_CAPACITY_PROPERTY = "jtxt2img.fontRegistry.derivedCapacity";
+    public static final int DEF_DERIVED_CAPACITY = 64;
+
+    private static final FontRegistry SHARED = new FontRegistry();
+
+    private static final int MAX_DERIVED_SIZE = Math.max(TextFitter.MAX_FONT_SIZE, TextFitter.REFERENCE_FONT_SIZE);
+    private static final int DERIVED_CAPACITY = Math.max(1, Integer.getInteger(DERIVED_CAPACITY_PROPERTY, DEF_DERIVED_CAPACITY));
+
+    private static final Map<FontKey, DerivedFonts> DERIVED = new LinkedHashMap<FontKey, DerivedFonts>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FontKey, DerivedFonts> eldest) {
+            return size() > DERIVED_CAPACITY;
+        }
+    };
+
+    // sources of the registered instances, weakly so unregistered fonts can still be collected
+    private static final Map<FontReference, String> IDENTITIES = new HashMap<>();
+    private static final ReferenceQueue<Font> IDENTITY_QUEUE = new ReferenceQueue<>();
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private final ConcurrentHashMap<String, Font> fonts = new ConcurrentHashMap<>();
+
+    public FontRegistry() {
+    }
+
+    public static FontRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Registers an already created font, replacing any font of the same name.
+     */
+    public Font register(final String name, final Font font) {
+        return register(name, font, "font:" + GENERATION.incrementAndGet());
+    }
+
+    private Font register(String name, Font font, String source) {
+        Validate.notBlank(name, "Font name must not be blank");
+        Validate.notNull(font, "Font must not be null");
+        synchronized (IDENTITIES) {
+            expungeStaleIdentities();
+            IDENTITIES.put(new FontReference(font, IDENTITY_QUEUE), source);
+        }
+        Font previous = fonts.put(name, font);
+        if (previous != null && LOG.isDebugEnabled()) {
+            LOG.debug("Font {} replaced {} with {}", name, previous.getFontName(), font.getFontName());
+        }
+        return font;
+    }
+
+    /**
+     * Loads a TrueType or OpenType font, or a Type 1 font for {@code .pfa} and {@code .pfb} files.
+     */
+    public Font registerFile(final String name, final File file) {
+        Validate.notNull(file, "File must not be null");
+        try {
+            String source = "file:" + file.getAbsolutePath() + "@" + CoreHelper.getVersion(file);
+            return register(name, scale(Font.createFont(fontFormat(file.getName()), file)), source);
+        } catch (FontFormatException | IOException e) {
+            throw new JTxt2ImgIoRuntimeException("Can't load font " + file, e);
+        }
+    }
+
+    /**
+     * Like {@link #registerFile} for a resource relative to the classpath root, e.g. {@code "fonts/brand.ttf"}.
+     */
+    public Font registerResource(final String name, final String resource) {
+        Validate.notBlank(resource, "Resource name must not be blank");
+        String location = resource.startsWith("/") ? resource.substring(1) : resource;
+        URL url = CoreHelper.getResource(location);
+        Validate.isTrue(url != null, "Font resource not found: %s", location);
+        try (InputStream inputStream = url.openStream()) {
+            String source = "classpath:" + location + "@" + CoreHelper.getResourceVersion(location);
+            return register(name, scale(Font.createFont(fontFormat(location), inputStream)), source);
+        } catch (FontFormatException | IOException e) {
+            throw new JTxt2ImgIoRuntimeException("Can't load font " + location, e);
+        }
+    }
+
+    /**
+     * @return the registered font or {@code null}
+     */
+    public Font get(final String name) {
+        Validate.notNull(name, "Font name must not be null");
+        return fonts.get(name);
+    }
+
+    public boolean contains(final String name) {
+        return name != null && fonts.containsKey(name);
+    }
+
+    public Font unregister(final String name) {
+        Validate.notNull(name, "Font name must not be null");
+        return fonts.remove(name);
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(fonts.keySet()));
+    }
+
+    /**
+     * Where a registered font was loaded from, e.g. {@code "file:/fonts/brand.ttf@1024@1445000000000"}, stable across
+     * restarts for files and resources. Fonts registered as instances get a new identity per registration.
+     *
+     * @return {@code null} for fonts that were not registered, e.g. installed ones
+     */
+    public static String identity(final Font font) {
+        if (font == null) {
+            return null;
+        }
+        synchronized (IDENTITIES) {
+            expungeStaleIdentities();
+            return IDENTITIES.get(new FontReference(font, null));
+        }
+    }
+
+    /**
+     * Returns the font in the given size, derived from the font itself instead of looking the face up by name,
+     * so created fonts keep working and their attributes are kept. Sizes up to the largest fitted size are
+     * cached for the {@value #DEF_DERIVED_CAPACITY} (see {@value #DERIVED_CAPACITY_PROPERTY}) most recent fonts.
+     */
+    public static Font derive(final Font font, final int size) {
+        return derivedFonts(font).get(size);
+    }
+
+    static DerivedFonts derivedFonts(Font font) {
+        Validate.notNull(font, "Font must not be null");
+        FontKey key = new FontKey(font);
+        synchronized (DERIVED) {
+            DerivedFonts derivedFonts = DERIVED.get(key);
+            if (derivedFonts == null) {
+                derivedFonts = new DerivedFonts(font);
+                DERIVED.put(key, derivedFonts);
+            }
+            return derivedFonts;
+        }
+    }
+
+    private static void expungeStaleIdentities() {
+        Reference<? extends Font> reference;
+        while ((reference = IDENTITY_QUEUE.poll()) != null) {
+            IDENTITIES.remove(reference);
+        }
+    }
+
+    private static Font scale(Font font) {
+        // created fonts are 1pt, the size is ignored by fitting but keeps the font usable elsewhere
+        return font.deriveFont((float) CoreHelper.DEF_PLACEHOLDER_FONT_SIZE);
+    }
+
+    private static int fontFormat(String name) {
+        String lowerCase = name.toLowerCase();
+        return lowerCase.endsWith(".pfa") || lowerCase.endsWith(".pfb") ? Font.TYPE1_FONT : Font.TRUETYPE_FONT;
+    }
+
+    @Override
+    public String toString() {
+        return "FontRegistry" + getNames();
+    }
+
+    /**
+     * Sizes of one font, looked up without locking once the holder is known.
+     */
+    static final class DerivedFonts {
+
+        private final Font font;
+        private final AtomicReferenceArray<Font> sizes = new AtomicReferenceArray<>(MAX_DERIVED_SIZE + 1);
+
+        DerivedFonts(Font font) {
+            this.font = font;
+        }
+
+        Font get(int size) {
+            Validate.isTrue(size > 0, "Font size must be positive: %d", size);
+            if (size > MAX_DERIVED_SIZE) {
+                return font.deriveFont((float) size);
+            }
+            Font derived = sizes.get(size);
+            if (derived == null) {
+                derived = font.getSize() == size && font.getSize2D() == size ? font : font.deriveFont((float) size);
+                sizes.lazySet(size, derived);
+            }
+            return derived;
+        }
+    }
+
+    /**
+     * A font and its {@link #identity(Font) identity}, for maps of values that depend on the glyphs.
+     * {@link Font#equals} compares names and attributes only.
+     */
+    public static final class FontKey {
+
+        private final Font font;
+        private final String identity;
+        private final int hash;
+
+        public FontKey(final Font font) {
+            Validate.notNull(font, "Font must not be null");
+            this.font = font;
+            this.identity = identity(font);
+            this.hash = 31 * font.hashCode() + (identity != null ? identity.hashCode() : 0);
+        }
+
+        public Font getFont() {
+            return font;
+        }
+
+        /**
+         * @return the {@link #identity(Font) identity} or {@code null}
+         */
+        public String getIdentity() {
+            return identity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FontKey)) {
+                return false;
+            }
+            FontKey that = (FontKey) o;
+            return hash == that.hash && font.equals(that.font)
+                    && (identity != null ? identity.equals(that.identity) : that.identity == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return font.getFontName() + "-" + font.getStyle() + (identity != null ? "@" + identity : "");
+        }
+    }
+
+    /**
+     * Compares fonts by identity, a loaded font can equal an installed one.
+     */
+    private static final class FontReference extends WeakReference<Font> {
+        private final int hash;
+
+        FontReference(Font referent, ReferenceQueue<? super Font> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FontReference)) {
+                return false;
+            }
+            Font referent = get();
+            return referent != null && referent == ((FontReference) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -19,127 +19,273 @@
 
 package com.embedler.moon.jtxt2img;
 
+import com.embedler.moon.jtxt2img.cache.FontMetricsCache;
+import com.embedler.moon.jtxt2img.cache.TemplateCache;
+import com.embedler.moon.jtxt2img.encoder.RowEncoder;
+import com.embedler.moon.jtxt2img.glyph.GlyphAtlas;
+import com.embedler.moon.jtxt2img.glyph.GlyphRenderer;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
 import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import org.apache.commons.lang3.Validate;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class ImageProcessor {
 
     private static int BI_IMAGE_TYPE = BufferedImage.TYPE_BYTE_BINARY;
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, false, false);
 
-    static class ImageTextSettings {
+    public static class ImageTextSettings {
 
-        private Rectangle2D textBounds;
-        private Font font;
-        private int fontSize;
+        private final Rectangle2D textBounds;
+        private final Font font;
+        private final int fontSize;
+        private final TextWrapper.Lines lines;
 
-        public Rectangle2D getTextBounds() {
-            return textBounds;
+        public ImageTextSettings(Font font, int fontSize, Rectangle2D textBounds) {
+            this.font = font;
+            this.fontSize = fontSize;
+            this.textBounds = (Rectangle2D) textBounds.clone();
+            this.lines = null;
         }
 
-        public void setTextBounds(Rectangle2D textBounds) {
-            this.textBounds = textBounds;
+        /**
+         * Settings of wrapped text, the bounds span all lines with the first baseline at zero.
+         */
+        public ImageTextSettings(Font font, int fontSize, TextWrapper.Lines lines) {
+            this.font = font;
+            this.fontSize = fontSize;
+            this.textBounds = new Rectangle2D.Float(0f, -lines.getAscent(), lines.getMaxWidth(), lines.getHeight());
+            this.lines = lines;
         }
 
-        public Font getFont() {
-            return font;
+        public Rectangle2D getTextBounds() {
+            return (Rectangle2D) textBounds.clone();
         }
 
-        public void setFont(Font font) {
-            this.font = font;
+        public Font getFont() {
+            return font;
         }
 
         public int getFontSize() {
             return fontSize;
         }
 
-        public void setFontSize(int fontSize) {
-            this.fontSize = fontSize;
+        /**
+         * @return the wrapped lines, or {@code null} for single line text
+         */
+        public TextWrapper.Lines getLines() {
+            return lines;
         }
     }
 
-    private final ImgTextProperties imgTextProperties;
+    private final RenderSpec renderSpec;
 
-    private ImageProcessor(ImgTextProperties imgTextProperties) {
-        this.imgTextProperties = imgTextProperties;
+    private ImageProcessor(RenderSpec renderSpec) {
+        this.renderSpec = renderSpec;
     }
 
     public static ImageProcessor forProperties(final ImgTextProperties imgTextProperties) {
-        return new ImageProcessor(imgTextProperties);
+        return forSpec(RenderSpec.of(imgTextProperties));
     }
 
-    private ImageTextSettings calculateImageTextSettings() {
-
-        final ImgTextPropertiesAccessor imgTextPropertiesAccessor = new ImgTextPropertiesAccessor(imgTextProperties);
-
-        final String text = imgTextPropertiesAccessor.getText();
-        final int h = imgTextPropertiesAccessor.getHeight();
-        final int w = imgTextPropertiesAccessor.getWidth();
-        Font currentFont = imgTextPropertiesAccessor.getFont();
-
-        ImageTextSettings imageTextSettings = new ImageTextSettings();
+    public static ImageProcessor forSpec(final RenderSpec renderSpec) {
+        Validate.notNull(renderSpec, "Render spec must not be null");
+        return new ImageProcessor(renderSpec);
+    }
 
-        BufferedImage bufferedImage = new BufferedImage(1, 1, BI_IMAGE_TYPE);
-        Graphics2D g = bufferedImage.createGraphics();
+    private ImageTextSettings calculateImageTextSettings() {
+        final String text = renderSpec.getText();
+        final int h = renderSpec.getHeight();
+        final int w = renderSpec.getWidth();
+        final Font currentFont = renderSpec.getFont();
+
+        final boolean wrapped = renderSpec.getTextWrap().isWrapped();
+
+        final FontMetricsCache fontMetricsCache = FontMetricsCache.shared();
+        ImageTextSettings imageTextSettings = fontMetricsCache.get(currentFont, text, w, h, wrapped);
+        if (imageTextSettings == null) {
+            imageTextSettings = wrapped ? TextWrapper.fit(text, currentFont, w, h) : TextFitter.fit(text, currentFont, w, h);
+            fontMetricsCache.put(currentFont, text, w, h, wrapped, imageTextSettings);
+        }
+        return imageTextSettings;
+    }
 
-        Rectangle2D rect = null;
+    public BufferedImage createBufferedImage() {
+        final String textToDraw = renderSpec.getText();
+        final int h = renderSpec.getHeight();
+        final int w = renderSpec.getWidth();
 
-        int fontSize = CoreHelper.DEF_PLACEHOLDER_FONT_SIZE;
-        final String fontName = currentFont.getFontName();
-        final int fontStyle = currentFont.getStyle();
+        long start = Metrics.startTime();
+        ImageTextSettings imageTextSettings = calculateImageTextSettings();
+        Metrics.stageCompleted(RenderMetrics.Stage.FIT, start);
+        Rectangle2D textBounds = imageTextSettings.getTextBounds();
 
-        Font fontIterator = null;
-        do {
-            fontSize--;
-            fontIterator = new Font(fontName, fontStyle, fontSize);
-            rect = getStringBoundsRectangle2D(g, text, fontIterator);
-        } while ((rect.getWidth() >= w || rect.getHeight() >= h) && (fontSize > 1));
-        g.dispose();
-        bufferedImage = null;
+        start = Metrics.startTime();
+        BufferedImage mappedBufferedImage;
+        BackgroundTemplate backgroundTemplate = renderSpec.getBackgroundTemplate();
+        if (backgroundTemplate == null) {
+            mappedBufferedImage = MappedImageFactory.createCompatibleMappedImage(w, h, BI_IMAGE_TYPE, createColorModel(), renderSpec.getRasterStorage());
+        } else {
+            BufferedImage background = TemplateCache.shared().get(backgroundTemplate, w, h);
+            mappedBufferedImage = MappedImageFactory.createCompatibleMappedImage(w, h, background.getSampleModel(),
+                    background.getColorModel(), renderSpec.getRasterStorage());
+            copyPixels(background, mappedBufferedImage);
+        }
+        Metrics.stageCompleted(RenderMetrics.Stage.ALLOCATE, start);
 
-        imageTextSettings.setFont(fontIterator);
-        imageTextSettings.setFontSize(fontSize);
-        imageTextSettings.setTextBounds(rect);
+        start = Metrics.startTime();
+        final int x = (w - (int) Math.ceil(textBounds.getWidth())) / 2 - (int) textBounds.getX();
+        final int y = (h - (int) Math.ceil(textBounds.getHeight())) / 2 - (int) textBounds.getY();
+        drawText(mappedBufferedImage, imageTextSettings, textToDraw, x, y);
+        Metrics.stageCompleted(RenderMetrics.Stage.DRAW, start);
 
-        return imageTextSettings;
+        return mappedBufferedImage;
     }
 
-    private Rectangle2D getStringBoundsRectangle2D(Graphics2D g, String title, Font font) {
-        g.setFont(font);
-        FontMetrics fm = g.getFontMetrics();
-        Rectangle2D rect = fm.getStringBounds(title, g);
-        return rect;
+    /**
+     * Palette of {@link EncodeOptions#getPaletteBits()} bits, a ramp from the background at index 0
+     * to the foreground at the last index.
+     */
+    public IndexColorModel createColorModel() {
+        final int bits = getPaletteBits();
+        final int size = 1 << bits;
+        final int bgColor = renderSpec.getBackgroundColor();
+        final int fgColor = renderSpec.getForegroundColor();
+        byte[] rmap = new byte[size];
+        byte[] gmap = new byte[size];
+        byte[] bmap = new byte[size];
+        for (int i = 0; i < size; i++) {
+            rmap[i] = (byte) blend(bgColor >> 16, fgColor >> 16, i, size - 1);
+            gmap[i] = (byte) blend(bgColor >> 8, fgColor >> 8, i, size - 1);
+            bmap[i] = (byte) blend(bgColor, fgColor, i, size - 1);
+        }
+        return new IndexColorModel(bits, size, rmap, gmap, bmap);
     }
 
-    public BufferedImage createBufferedImage() {
-        final ImgTextPropertiesAccessor imgTextPropertiesAccessor = new ImgTextPropertiesAccessor(imgTextProperties);
+    public int getPaletteBits() {
+        return renderSpec.getEncodeOptions().getPaletteBits();
+    }
 
-        final String textToDraw = imgTextPropertiesAccessor.getText();
-        final int h = imgTextPropertiesAccessor.getHeight();
-        final int w = imgTextPropertiesAccessor.getWidth();
-        final Color bgColor = imgTextPropertiesAccessor.getBackgroundColor();
-        final Color fgColor = imgTextPropertiesAccessor.getForegroundColor();
+    private static int blend(int from, int to, int step, int steps) {
+        from &= 0xff;
+        to &= 0xff;
+        return from + ((to - from) * step + (to > from ? steps / 2 : -steps / 2)) / steps;
+    }
 
+    /**
+     * Renders the image top to bottom into one reusable heap strip of {@code stripHeight} rows and hands every
+     * strip to the encoder, so memory is bounded by the strip rather than the image. Strips that can't contain
+     * any glyph are left blank without drawing. The caller begins the encoder with {@link #createColorModel()}
+     * and {@link #getPaletteBits()} and finishes it afterwards.
+     */
+    public void writeStrips(final RowEncoder rowEncoder, final int stripHeight) throws IOException {
+        Validate.notNull(rowEncoder, "Row encoder must not be null");
+        Validate.validState(renderSpec.getBackgroundTemplate() == null, "Background templates are not palette images and can't be streamed");
+        Validate.isTrue(stripHeight > 0, "Strip height must be positive: %d", stripHeight);
+        final String textToDraw = renderSpec.getText();
+        final int h = renderSpec.getHeight();
+        final int w = renderSpec.getWidth();
+
+        long start = Metrics.startTime();
         ImageTextSettings imageTextSettings = calculateImageTextSettings();
+        Metrics.stageCompleted(RenderMetrics.Stage.FIT, start);
         Rectangle2D textBounds = imageTextSettings.getTextBounds();
+        Font font = imageTextSettings.getFont();
+
+        start = Metrics.startTime();
+        BufferedImage strip = new BufferedImage(w, Math.min(stripHeight, h), BI_IMAGE_TYPE, createColorModel());
+        byte[] stripData = ((DataBufferByte) strip.getRaster().getDataBuffer()).getData();
+        Metrics.stageCompleted(RenderMetrics.Stage.ALLOCATE, start);
+
+        final int x = (w - (int) Math.ceil(textBounds.getWidth())) / 2 - (int) textBounds.getX();
+        final int y = (h - (int) Math.ceil(textBounds.getHeight())) / 2 - (int) textBounds.getY();
+        // rows any glyph may touch, with a margin for rounding
+        Rectangle2D maxCharBounds = font.getMaxCharBounds(FONT_RENDER_CONTEXT);
+        TextWrapper.Lines lines = imageTextSettings.getLines();
+        final int lastBaseline = lines != null ? baseline(lines, y, lines.getLineCount() - 1) : y;
+        final int inkTop = y + (int) Math.floor(maxCharBounds.getY()) - 2;
+        final int inkBottom = lastBaseline + (int) Math.ceil(maxCharBounds.getMaxY()) + 2;
+
+        boolean dirty = true;
+        for (int y0 = 0; y0 < h; y0 += strip.getHeight()) {
+            int rows = Math.min(strip.getHeight(), h - y0);
+            if (dirty) {
+                Arrays.fill(stripData, (byte) 0);
+                dirty = false;
+            }
+            if (y0 < inkBottom && y0 + rows > inkTop) {
+                start = Metrics.startTime();
+                drawText(strip, imageTextSettings, textToDraw, x, y - y0);
+                Metrics.stageCompleted(RenderMetrics.Stage.DRAW, start);
+                dirty = true;
+            }
+            rowEncoder.writeRows(strip, rows);
+        }
+    }
 
-        byte[] rmap = {(byte) bgColor.getRed(), (byte) fgColor.getRed()};
-        byte[] gmap = {(byte) bgColor.getGreen(), (byte) fgColor.getGreen()};
-        byte[] bmap = {(byte) bgColor.getBlue(), (byte) fgColor.getBlue()};
+    private void drawText(BufferedImage image, ImageTextSettings imageTextSettings, String textToDraw, int x, int y) {
+        Font font = imageTextSettings.getFont();
+        TextWrapper.Lines lines = imageTextSettings.getLines();
+        if (lines == null) {
+            drawLine(image, font, textToDraw, x, y);
+            return;
+        }
+        float blockWidth = lines.getMaxWidth();
+        TextWrap textWrap = renderSpec.getTextWrap();
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            float slack = blockWidth - lines.getLineWidth(i);
+            int lineX = x;
+            if (textWrap == TextWrap.CENTER) {
+                lineX += Math.round(slack / 2f);
+            } else if (textWrap == TextWrap.RIGHT) {
+                lineX += Math.round(slack);
+            }
+            drawLine(image, font, lines.getLine(i), lineX, baseline(lines, y, i));
+        }
+    }
 
-        IndexColorModel indexColorModel = new IndexColorModel(1, 2, rmap, gmap, bmap);
-        BufferedImage mappedBufferedImage = MappedImageFactory.createCompatibleMappedImage(w, h, BI_IMAGE_TYPE, indexColorModel);
+    private static void copyPixels(BufferedImage source, BufferedImage target) {
+        DataBuffer from = source.getRaster().getDataBuffer();
+        DataBuffer to = target.getRaster().getDataBuffer();
+        if (from instanceof DataBufferInt && to instanceof DataBufferInt && from.getSize() == to.getSize()) {
+            System.arraycopy(((DataBufferInt) from).getData(), 0, ((DataBufferInt) to).getData(), 0, from.getSize());
+        } else {
+            target.getRaster().setRect(source.getRaster());
+        }
+    }
 
-        Graphics2D g = mappedBufferedImage.createGraphics();
-        g.setFont(imageTextSettings.getFont());
-        g.setBackground(bgColor);
-        g.setColor(fgColor);
-        g.drawString(textToDraw, (w - (int) Math.ceil(textBounds.getWidth())) / 2 - (int) textBounds.getX(), (h - (int) Math.ceil(textBounds.getHeight())) / 2 - (int) textBounds.getY());
-        g.dispose();
+    private static int baseline(TextWrapper.Lines lines, int y, int line) {
+        return y + Math.round(line * lines.getLineHeight());
+    }
 
-        return mappedBufferedImage;
+    private void drawLine(BufferedImage image, Font font, String textToDraw, int x, int y) {
+        final int bgColor = renderSpec.getBackgroundColor();
+        final int fgColor = renderSpec.getForegroundColor();
+        final boolean solid = renderSpec.getBackgroundTemplate() == null;
+        // the raster starts out as background; equal colors leave it unchanged in both renderers
+        boolean drawn = renderSpec.getTextRenderer() == TextRenderer.GLYPH_ATLAS
+                && (solid && bgColor == fgColor || GlyphRenderer.drawString(image, font, textToDraw, x, y, GlyphAtlas.shared()));
+        if (!drawn) {
+            Graphics2D g = image.createGraphics();
+            if (!solid || getPaletteBits() > 1) {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+            g.setFont(font);
+            g.setBackground(new Color(bgColor));
+            g.setColor(new Color(fgColor));
+            g.drawString(textToDraw, x, y);
+            g.dispose();
+        }
     }
 }
@@ -19,6 +19,8 @@
 
 package com.embedler.moon.jtxt2img;
 
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+
 import java.awt.*;
 
 public class ImgTextProperties {
@@ -30,9 +32,17 @@ public class ImgTextProperties {
     private int width;
     private IMG_FORMAT format;
     private Font font;
-
+    private RasterStorage rasterStorage;
+    private EncodeOptions encodeOptions;
+    private TextRenderer textRenderer;
+    private TextWrap textWrap;
+    private BackgroundTemplate backgroundTemplate;
+
+    /**
+     * {@link #AUTO} encodes both PNG and GIF and keeps the smaller one.
+     */
     public enum IMG_FORMAT{
-        PNG, JPG, GIF
+        PNG, JPG, GIF, AUTO
     }
 
     public String getBgColor() {
@@ -90,4 +100,44 @@ public class ImgTextProperties {
     public void setFont(Font font) {
         this.font = font;
     }
+
+    public RasterStorage getRasterStorage() {
+        return rasterStorage;
+    }
+
+    public void setRasterStorage(RasterStorage rasterStorage) {
+        this.rasterStorage = rasterStorage;
+    }
+
+    public EncodeOptions getEncodeOptions() {
+        return encodeOptions;
+    }
+
+    public void setEncodeOptions(EncodeOptions encodeOptions) {
+        this.encodeOptions = encodeOptions;
+    }
+
+    public TextRenderer getTextRenderer() {
+        return textRenderer;
+    }
+
+    public void setTextRenderer(TextRenderer textRenderer) {
+        this.textRenderer = textRenderer;
+    }
+
+    public TextWrap getTextWrap() {
+        return textWrap;
+    }
+
+    public void setTextWrap(TextWrap textWrap) {
+        this.textWrap = textWrap;
+    }
+
+    public BackgroundTemplate getBackgroundTemplate() {
+        return backgroundTemplate;
+    }
+
+    public void setBackgroundTemplate(BackgroundTemplate backgroundTemplate) {
+        this.backgroundTemplate = backgroundTemplate;
+    }
 }
@@ -19,9 +19,10 @@
 
 package com.embedler.moon.jtxt2img;
 
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
-import org.apache.commons.lang3.math.NumberUtils;
 
 import java.awt.*;
 import java.util.regex.Matcher;
@@ -55,6 +56,45 @@ public class ImgTextPropertiesAccessor {
         return isValidFont() ? imgTextProperties.getFont() : getDefaultFont();
     }
 
+    public boolean isValidRasterStorage() {
+        return imgTextProperties.getRasterStorage() != null;
+    }
+
+    public RasterStorage getRasterStorage() {
+        return isValidRasterStorage() ? imgTextProperties.getRasterStorage() : MappedImageFactory.getDefaultRasterStorage();
+    }
+
+    public boolean isValidEncodeOptions() {
+        return imgTextProperties.getEncodeOptions() != null;
+    }
+
+    public EncodeOptions getEncodeOptions() {
+        return isValidEncodeOptions() ? imgTextProperties.getEncodeOptions() : EncodeOptions.DEFAULT;
+    }
+
+    public boolean isValidTextRenderer() {
+        return imgTextProperties.getTextRenderer() != null;
+    }
+
+    public TextRenderer getTextRenderer() {
+        return isValidTextRenderer() ? imgTextProperties.getTextRenderer() : TextRenderer.getDefault();
+    }
+
+    public boolean isValidTextWrap() {
+        return imgTextProperties.getTextWrap() != null;
+    }
+
+    public TextWrap getTextWrap() {
+        return isValidTextWrap() ? imgTextProperties.getTextWrap() : TextWrap.NONE;
+    }
+
+    /**
+     * @return the template or {@code null} for a solid background
+     */
+    public BackgroundTemplate getBackgroundTemplate() {
+        return imgTextProperties.getBackgroundTemplate();
+    }
+
     public boolean isValidFormat() {
         return imgTextProperties.getFormat() != null;
     }
@@ -89,17 +129,7 @@ public class ImgTextPropertiesAccessor {
     }
 
     public Color getForegroundColor() {
-        Color fgColor = getDefaultForegroundColor();
-        if (isValidForegroundColor()) {
-            Matcher m = CoreHelper.COLOR_REGEXP.matcher(imgTextProperties.getFgColor());
-            if (m.matches()) {
-                String temp = m.group(1);
-                if (NumberUtils.isNumber("0x" + temp)) {
-                    fgColor = CoreHelper.hex2Rgb(temp);
-                }
-            }
-        }
-        return fgColor;
+        return parseColor(imgTextProperties.getFgColor(), getDefaultForegroundColor());
     }
 
     public Color getDefaultBackgroundColor() {
@@ -116,17 +146,17 @@ public class ImgTextPropertiesAccessor {
     }
 
     public Color getBackgroundColor() {
-        Color bgColor = getDefaultBackgroundColor();
-        if (isValidForegroundColor()) {
-            Matcher m = CoreHelper.COLOR_REGEXP.matcher(imgTextProperties.getBgColor());
+        return parseColor(imgTextProperties.getBgColor(), getDefaultBackgroundColor());
+    }
+
+    private static Color parseColor(String colorCode, Color defaultColor) {
+        if (StringUtils.isNotBlank(colorCode)) {
+            Matcher m = CoreHelper.COLOR_REGEXP.matcher(colorCode);
             if (m.matches()) {
-                String temp = m.group(1);
-                if (NumberUtils.isNumber("0x" + temp)) {
-                    bgColor = CoreHelper.hex2Rgb(temp);
-                }
+                return CoreHelper.hex2Rgb(m.group(1));
             }
         }
-        return bgColor;
+        return defaultColor;
     }
 
     public int getDefaultWidth() {
@@ -139,7 +169,7 @@ public class ImgTextPropertiesAccessor {
 
     public boolean isValidWidth() {
         int width = imgTextProperties.getWidth();
-        return width <= CoreHelper.DEF_PLACEHOLDER_MAX_WIDTH && width >= CoreHelper.DEF_PLACEHOLDER_MIN_WIDTH;
+        return width <= CoreHelper.getMaxWidth() && width >= CoreHelper.DEF_PLACEHOLDER_MIN_WIDTH;
     }
 
     public int getHeight() {
@@ -152,7 +182,7 @@ public class ImgTextPropertiesAccessor {
 
     public boolean isValidHeight() {
         int height = imgTextProperties.getHeight();
-        return height <= CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT && height >= CoreHelper.DEF_PLACEHOLDER_MIN_HEIGHT;
+        return height <= CoreHelper.getMaxHeight() && height >= CoreHelper.DEF_PLACEHOLDER_MIN_HEIGHT;
     }
 
     public boolean isValidSize() {
@@ -19,28 +19,66 @@
 
 package com.embedler.moon.jtxt2img;
 
+import com.embedler.moon.jtxt2img.async.RenderExecutors;
+import com.embedler.moon.jtxt2img.async.RenderFuture;
+import com.embedler.moon.jtxt2img.cache.DiskImageCache;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.encoder.IndexedGifEncoder;
+import com.embedler.moon.jtxt2img.encoder.ImageWriterPool;
+import com.embedler.moon.jtxt2img.encoder.IndexedPngEncoder;
+import com.embedler.moon.jtxt2img.encoder.PaletteReducer;
+import com.embedler.moon.jtxt2img.encoder.RowEncoder;
+import com.embedler.moon.jtxt2img.io.ByteBufferOutputStream;
+import com.embedler.moon.jtxt2img.io.ByteBufferPool;
+import com.embedler.moon.jtxt2img.io.CountingOutputStream;
+import com.embedler.moon.jtxt2img.io.PooledByteBuffer;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
-public class JTxt2Img {
+public class JTxt2Img implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(JTxt2Img.class);
 
+    private static final int DEF_ENCODE_BUFFER_SIZE = 16 * 1024;
+
+    public static final String STRIP_HEIGHT_PROPERTY = "jtxt2img.stripHeight";
+    public static final int DEF_STRIP_HEIGHT = 256;
+
     private final ImgTextProperties imgTextProperties;
-    private final ImgTextPropertiesAccessor imgTextPropertiesAccessor;
+    private RenderSpec pinnedSpec;
+    private RenderSpec renderSpec;
     private BufferedImage bufferedImage;
+    private EncodedImageCache encodedImageCache;
+    private DiskImageCache diskImageCache;
+    private EncodedImageCache.Key cacheKey;
+    private byte[] encodedImage;
+    private ImgTextProperties.IMG_FORMAT encodedFormat;
+    private long generateNanos;
 
     private JTxt2Img(ImgTextProperties imgTextProperties) {
         this.imgTextProperties = imgTextProperties;
-        imgTextPropertiesAccessor = new ImgTextPropertiesAccessor(imgTextProperties);
     }
 
     public static JTxt2Img withText(final String text) {
@@ -58,46 +96,150 @@ public class JTxt2Img {
         return new JTxt2Img(imgTextProperties);
     }
 
+    /**
+     * Starts from an already resolved spec, which is used as is until one of the builder methods changes it.
+     */
+    public static JTxt2Img withSpec(final RenderSpec renderSpec) {
+        Validate.notNull(renderSpec, "Render spec must not be null");
+        JTxt2Img jTxt2Img = new JTxt2Img(renderSpec.toProperties());
+        jTxt2Img.pinnedSpec = renderSpec;
+        return jTxt2Img;
+    }
+
+    /**
+     * Warms up the default font and formats, see {@link WarmUp} to choose them.
+     */
+    public static WarmUp.Report warmUp() {
+        return WarmUp.create().run();
+    }
+
+    public static RenderFuture<WarmUp.Report> warmUpAsync() {
+        return WarmUp.create().runAsync();
+    }
+
     public JTxt2Img foregroundColor(final String colorCode) {
         imgTextProperties.setFgColor(colorCode);
+        pinnedSpec = null;
         return this;
     }
 
     public JTxt2Img backgroundColor(final String colorCode) {
         imgTextProperties.setBgColor(colorCode);
+        pinnedSpec = null;
         return this;
     }
 
     public JTxt2Img width(final int width) {
         imgTextProperties.setWidth(width);
+        pinnedSpec = null;
         return this;
     }
 
     public JTxt2Img height(final int height) {
         imgTextProperties.setHeight(height);
+        pinnedSpec = null;
         return this;
     }
 
     public JTxt2Img font(final Font font) {
         imgTextProperties.setFont(font);
+        pinnedSpec = null;
         return this;
     }
 
+    /**
+     * @param fontName a name registered with {@link FontRegistry#shared()}
+     */
+    public JTxt2Img font(final String fontName) {
+        Font font = FontRegistry.shared().get(fontName);
+        Validate.isTrue(font != null, "Font is not registered: %s", fontName);
+        return font(font);
+    }
+
     public JTxt2Img format(final ImgTextProperties.IMG_FORMAT imgFormat) {
         imgTextProperties.setFormat(imgFormat);
+        pinnedSpec = null;
+        return this;
+    }
+
+    public JTxt2Img encodeOptions(final EncodeOptions encodeOptions) {
+        imgTextProperties.setEncodeOptions(encodeOptions);
+        pinnedSpec = null;
+        return this;
+    }
+
+    public JTxt2Img rasterStorage(final RasterStorage rasterStorage) {
+        imgTextProperties.setRasterStorage(rasterStorage);
+        pinnedSpec = null;
+        return this;
+    }
+
+    public JTxt2Img textRenderer(final TextRenderer textRenderer) {
+        imgTextProperties.setTextRenderer(textRenderer);
+        pinnedSpec = null;
+        return this;
+    }
+
+    public JTxt2Img textWrap(final TextWrap textWrap) {
+        imgTextProperties.setTextWrap(textWrap);
+        pinnedSpec = null;
+        return this;
+    }
+
+    /**
+     * Draws the text on a scaled and cropped background image instead of the background color,
+     * {@code null} restores the solid background.
+     */
+    public JTxt2Img backgroundTemplate(final BackgroundTemplate backgroundTemplate) {
+        imgTextProperties.setBackgroundTemplate(backgroundTemplate);
+        pinnedSpec = null;
+        return this;
+    }
+
+    public JTxt2Img cache(final EncodedImageCache encodedImageCache) {
+        this.encodedImageCache = encodedImageCache;
+        return this;
+    }
+
+    /**
+     * Persistent cache consulted after the in-memory one, {@code null} disables it.
+     */
+    public JTxt2Img diskCache(final DiskImageCache diskImageCache) {
+        this.diskImageCache = diskImageCache;
         return this;
     }
 
     public JTxt2Img generate() {
-        bufferedImage = ImageProcessor.forProperties(imgTextProperties).createBufferedImage();
+        close();
+        cacheKey = null;
+        encodedFormat = null;
+        renderSpec = pinnedSpec != null ? pinnedSpec : RenderSpec.of(imgTextProperties);
+        long start = System.nanoTime();
+        if (encodedImageCache != null || diskImageCache != null) {
+            cacheKey = EncodedImageCache.Key.of(renderSpec);
+            encodedImage = encodedImageCache != null ? encodedImageCache.get(cacheKey) : null;
+            if (encodedImage == null && diskImageCache != null) {
+                encodedImage = diskImageCache.get(cacheKey);
+                if (encodedImage != null && encodedImageCache != null) {
+                    encodedImageCache.put(cacheKey, encodedImage, System.nanoTime() - start);
+                }
+            }
+            if (encodedImage != null) {
+                return this;
+            }
+        }
+        start = System.nanoTime();
+        bufferedImage = ImageProcessor.forSpec(renderSpec).createBufferedImage();
+        generateNanos = System.nanoTime() - start;
         return this;
     }
 
     public boolean write(File file) {
         Validate.isTrue(file != null && file.getParentFile().exists(), "File must not be null and exists");
         boolean result = false;
-        try (OutputStream os = new FileOutputStream(file)) {
-            result = write(os);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            result = write(channel);
         } catch (Exception e) {
             String msg = "Can't write image placeholder to the file {}";
             if (LOG.isErrorEnabled())
@@ -107,13 +249,15 @@ public class JTxt2Img {
         return result;
     }
 
+    /**
+     * Writes the image and closes the stream, see {@link #write(WritableByteChannel)} to keep the target open.
+     */
     public boolean write(OutputStream outputStream) {
         Validate.notNull(outputStream, "OutputStream must not be null");
-        Validate.notNull(bufferedImage, "Image must be generated before writing to output stream");
+        validateGenerated();
         boolean result = false;
-        ImgTextPropertiesAccessor imgTextPropertiesAccessor = new ImgTextPropertiesAccessor(imgTextProperties);
         try {
-            result = ImageIO.write(bufferedImage, imgTextPropertiesAccessor.getFormat().name().toLowerCase(), outputStream);
+            result = writeEncoded(outputStream);
             if (outputStream != null) {
                 try {
                     outputStream.close();
@@ -128,4 +272,360 @@ public class JTxt2Img {
         }
         return result;
     }
+
+    /**
+     * Writes the image to a blocking channel, which is left open.
+     */
+    public boolean write(WritableByteChannel channel) {
+        Validate.notNull(channel, "Channel must not be null");
+        validateGenerated();
+        boolean result = false;
+        ByteBufferOutputStream encoded = null;
+        try {
+            ByteBuffer bytes;
+            if (encodedImage != null) {
+                bytes = ByteBuffer.wrap(encodedImage);
+                result = true;
+            } else {
+                encoded = new ByteBufferOutputStream(ByteBufferPool.shared(), DEF_ENCODE_BUFFER_SIZE);
+                result = writeEncoded(encoded);
+                bytes = encoded.getBuffer();
+                bytes.flip();
+            }
+            while (result && bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (Exception e) {
+            String msg = "Can't write image placeholder to the channel";
+            if (LOG.isErrorEnabled())
+                LOG.error(msg);
+            throw new JTxt2ImgIoRuntimeException(msg, e);
+        } finally {
+            if (encoded != null) {
+                ByteBufferPool.shared().release(encoded.getBuffer());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the image into the remaining space of the buffer.
+     *
+     * @return number of bytes written, or -1 if there is no writer for the format
+     * @throws JTxt2ImgIoRuntimeException if the image does not fit, the buffer position is left unchanged
+     */
+    public int writeTo(ByteBuffer buffer) {
+        Validate.notNull(buffer, "Buffer must not be null");
+        validateGenerated();
+        int start = buffer.position();
+        try {
+            if (!writeEncoded(new ByteBufferOutputStream(buffer))) {
+                buffer.position(start);
+                return -1;
+            }
+            return buffer.position() - start;
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            throw new JTxt2ImgIoRuntimeException("Buffer is too small for the image placeholder", e);
+        } catch (Exception e) {
+            buffer.position(start);
+            String msg = "Can't write image placeholder to the buffer";
+            if (LOG.isErrorEnabled())
+                LOG.error(msg);
+            throw new JTxt2ImgIoRuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Encodes the image into a direct buffer from the shared {@link ByteBufferPool}.
+     * The caller must close the result to hand the buffer back.
+     */
+    public PooledByteBuffer encodeToPooledBuffer() {
+        validateGenerated();
+        int initialCapacity = encodedImage != null ? encodedImage.length : DEF_ENCODE_BUFFER_SIZE;
+        ByteBufferOutputStream encoded = new ByteBufferOutputStream(ByteBufferPool.shared(), initialCapacity);
+        try {
+            if (!writeEncoded(encoded)) {
+                throw new JTxt2ImgIoRuntimeException("No writer for " + renderSpec.getFormat());
+            }
+            ByteBuffer bytes = encoded.getBuffer();
+            bytes.flip();
+            return new PooledByteBuffer(ByteBufferPool.shared(), bytes);
+        } catch (Exception e) {
+            ByteBufferPool.shared().release(encoded.getBuffer());
+            if (e instanceof JTxt2ImgIoRuntimeException) {
+                throw (JTxt2ImgIoRuntimeException) e;
+            }
+            String msg = "Can't encode image placeholder";
+            if (LOG.isErrorEnabled())
+                LOG.error(msg);
+            throw new JTxt2ImgIoRuntimeException(msg, e);
+        }
+    }
+
+    /**
+     * Renders and encodes the image strip by strip without generating the whole raster, so very large
+     * images need memory for one strip only. The strip height comes from {@value #STRIP_HEIGHT_PROPERTY},
+     * {@link #DEF_STRIP_HEIGHT} rows by default.
+     */
+    public boolean writeStreaming(final File file) {
+        Validate.isTrue(file != null && file.getParentFile().exists(), "File must not be null and exists");
+        try {
+            return writeStreaming(new BufferedOutputStream(Files.newOutputStream(file.toPath()), DEF_ENCODE_BUFFER_SIZE), getStripHeight());
+        } catch (IOException e) {
+            String msg = "Can't write image placeholder to the file {}";
+            if (LOG.isErrorEnabled())
+                LOG.error(msg, file.getName());
+            throw new JTxt2ImgIoRuntimeException(msg, e);
+        }
+    }
+
+    public boolean writeStreaming(final OutputStream outputStream) {
+        return writeStreaming(outputStream, getStripHeight());
+    }
+
+    /**
+     * Streams the current properties as non interlaced PNG or GIF, {@link #generate()} is not needed.
+     * {@link ImgTextProperties.IMG_FORMAT#AUTO AUTO} streams PNG, which is the smaller format for big images.
+     * Closes the stream like {@link #write(OutputStream)}.
+     *
+     * @return {@code false} if the image can't be streamed, e.g. JPEG, progressive output or a background template
+     */
+    public boolean writeStreaming(final OutputStream outputStream, final int stripHeight) {
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        Validate.isTrue(stripHeight > 0, "Strip height must be positive: %d", stripHeight);
+        RenderSpec spec = pinnedSpec != null ? pinnedSpec : RenderSpec.of(imgTextProperties);
+        ImgTextProperties.IMG_FORMAT format = spec.getFormat() == ImgTextProperties.IMG_FORMAT.AUTO
+                ? ImgTextProperties.IMG_FORMAT.PNG : spec.getFormat();
+        EncodeOptions encodeOptions = spec.getEncodeOptions();
+        if (encodeOptions.isProgressive() || format == ImgTextProperties.IMG_FORMAT.JPG || spec.getBackgroundTemplate() != null) {
+            closeQuietly(outputStream);
+            return false;
+        }
+        RowEncoder rowEncoder = null;
+        try {
+            ImageProcessor imageProcessor = ImageProcessor.forSpec(spec);
+            int bits = imageProcessor.getPaletteBits();
+            rowEncoder = format == ImgTextProperties.IMG_FORMAT.PNG
+                    ? IndexedPngEncoder.get().begin(spec.getWidth(), spec.getHeight(), imageProcessor.createColorModel(), bits,
+                    outputStream, encodeOptions.getPngCompressionLevel())
+                    : IndexedGifEncoder.get().begin(spec.getWidth(), spec.getHeight(), imageProcessor.createColorModel(), bits, outputStream);
+            imageProcessor.writeStrips(rowEncoder, stripHeight);
+            rowEncoder.finish();
+            outputStream.close();
+            encodedFormat = format;
+        } catch (Exception e) {
+            closeQuietly(outputStream);
+            String msg = "Can't stream image placeholder to the out stream";
+            if (LOG.isErrorEnabled())
+                LOG.error(msg);
+            throw new JTxt2ImgIoRuntimeException(msg, e);
+        } finally {
+            // the encoders are shared by the thread, release them on errors too
+            if (rowEncoder != null) {
+                rowEncoder.abort();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Format of the last written image, the one chosen for {@link ImgTextProperties.IMG_FORMAT#AUTO AUTO},
+     * e.g. to set the {@code Content-Type}.
+     *
+     * @return {@code null} if nothing was written since the last {@link #generate()}
+     */
+    public ImgTextProperties.IMG_FORMAT getEncodedFormat() {
+        if (encodedFormat == null && encodedImage != null) {
+            // cached bytes, possibly encoded by another instance
+            encodedFormat = detectFormat(encodedImage);
+        }
+        return encodedFormat;
+    }
+
+    /**
+     * Generates the image on the {@link RenderExecutors#defaultExecutor() default executor}.
+     * The builder must not be touched until the returned future completes.
+     */
+    public RenderFuture<JTxt2Img> generateAsync() {
+        return generateAsync(RenderExecutors.defaultExecutor());
+    }
+
+    public RenderFuture<JTxt2Img> generateAsync(final Executor executor) {
+        return RenderFuture.submit(new Callable<JTxt2Img>() {
+            @Override
+            public JTxt2Img call() throws Exception {
+                return generate();
+            }
+        }, executor);
+    }
+
+    /**
+     * Writes the image on the {@link RenderExecutors#defaultExecutor() default executor},
+     * generating it first if that has not been done yet.
+     */
+    public RenderFuture<Boolean> writeAsync(final File file) {
+        return writeAsync(file, RenderExecutors.defaultExecutor());
+    }
+
+    public RenderFuture<Boolean> writeAsync(final File file, final Executor executor) {
+        Validate.isTrue(file != null && file.getParentFile().exists(), "File must not be null and exists");
+        return RenderFuture.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                generateIfNeeded();
+                return write(file);
+            }
+        }, executor);
+    }
+
+    public RenderFuture<Boolean> writeAsync(final OutputStream outputStream) {
+        return writeAsync(outputStream, RenderExecutors.defaultExecutor());
+    }
+
+    public RenderFuture<Boolean> writeAsync(final OutputStream outputStream, final Executor executor) {
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        return RenderFuture.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                generateIfNeeded();
+                return write(outputStream);
+            }
+        }, executor);
+    }
+
+    public RenderFuture<Boolean> writeAsync(final WritableByteChannel channel) {
+        return writeAsync(channel, RenderExecutors.defaultExecutor());
+    }
+
+    public RenderFuture<Boolean> writeAsync(final WritableByteChannel channel, final Executor executor) {
+        Validate.notNull(channel, "Channel must not be null");
+        return RenderFuture.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                generateIfNeeded();
+                return write(channel);
+            }
+        }, executor);
+    }
+
+    private static void closeQuietly(OutputStream outputStream) {
+        try {
+            outputStream.close();
+        } catch (Exception e) {
+        }
+    }
+
+    private static int getStripHeight() {
+        int stripHeight = Integer.getInteger(STRIP_HEIGHT_PROPERTY, DEF_STRIP_HEIGHT);
+        return stripHeight > 0 ? stripHeight : DEF_STRIP_HEIGHT;
+    }
+
+    private void generateIfNeeded() {
+        if (bufferedImage == null && encodedImage == null) {
+            generate();
+        }
+    }
+
+    private void validateGenerated() {
+        Validate.isTrue(bufferedImage != null || encodedImage != null, "Image must be generated before writing to output stream");
+    }
+
+    private boolean writeEncoded(OutputStream outputStream) throws IOException {
+        if (encodedImage != null) {
+            outputStream.write(encodedImage);
+            return true;
+        }
+        if (cacheKey != null) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            boolean result = encode(bytes);
+            if (result) {
+                encodedImage = bytes.toByteArray();
+                if (encodedImageCache != null) {
+                    encodedImageCache.put(cacheKey, encodedImage, generateNanos + System.nanoTime() - start);
+                }
+                if (diskImageCache != null) {
+                    diskImageCache.put(cacheKey, encodedImage);
+                }
+                outputStream.write(encodedImage);
+            }
+            return result;
+        }
+        return encode(outputStream);
+    }
+
+    private boolean encode(OutputStream outputStream) throws IOException {
+        if (!Metrics.isEnabled()) {
+            return encodeImage(outputStream);
+        }
+        long start = System.nanoTime();
+        CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+        boolean result = encodeImage(countingOutputStream);
+        Metrics.stageCompleted(RenderMetrics.Stage.ENCODE, start);
+        if (result) {
+            Metrics.get().encoded(encodedFormat, countingOutputStream.getCount());
+        }
+        return result;
+    }
+
+    private boolean encodeImage(OutputStream outputStream) throws IOException {
+        ImgTextProperties.IMG_FORMAT format = renderSpec.getFormat();
+        if (format != ImgTextProperties.IMG_FORMAT.AUTO) {
+            boolean result = encodeImage(bufferedImage, format, outputStream);
+            encodedFormat = result ? format : null;
+            return result;
+        }
+
+        // fewer bits per pixel can only make both formats smaller
+        BufferedImage image = IndexedPngEncoder.canEncode(bufferedImage) ? PaletteReducer.reduce(bufferedImage) : bufferedImage;
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        boolean pngWritten = encodeImage(image, ImgTextProperties.IMG_FORMAT.PNG, png);
+        boolean gifWritten = encodeImage(image, ImgTextProperties.IMG_FORMAT.GIF, gif);
+        if (!pngWritten && !gifWritten) {
+            return false;
+        }
+        boolean usePng = pngWritten && (!gifWritten || png.size() <= gif.size());
+        encodedFormat = usePng ? ImgTextProperties.IMG_FORMAT.PNG : ImgTextProperties.IMG_FORMAT.GIF;
+        (usePng ? png : gif).writeTo(outputStream);
+        return true;
+    }
+
+    private boolean encodeImage(BufferedImage image, ImgTextProperties.IMG_FORMAT format, OutputStream outputStream) throws IOException {
+        EncodeOptions encodeOptions = renderSpec.getEncodeOptions();
+        // the native encoders don't interlace
+        if (!encodeOptions.isProgressive()) {
+            if (format == ImgTextProperties.IMG_FORMAT.PNG && IndexedPngEncoder.canEncode(image)) {
+                IndexedPngEncoder.get().encode(image, outputStream, encodeOptions.getPngCompressionLevel());
+                return true;
+            }
+            if (format == ImgTextProperties.IMG_FORMAT.GIF && IndexedGifEncoder.canEncode(image)) {
+                IndexedGifEncoder.get().encode(image, outputStream);
+                return true;
+            }
+        }
+        return ImageWriterPool.shared().write(image, format, outputStream, encodeOptions);
+    }
+
+    private static ImgTextProperties.IMG_FORMAT detectFormat(byte[] data) {
+        if (data.length >= 4 && data[0] == (byte) 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return ImgTextProperties.IMG_FORMAT.PNG;
+        }
+        if (data.length >= 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+            return ImgTextProperties.IMG_FORMAT.GIF;
+        }
+        return ImgTextProperties.IMG_FORMAT.JPG;
+    }
+
+    /**
+     * Releases the generated image right away instead of waiting for the garbage collector.
+     * The builder can generate a new image afterwards.
+     */
+    @Override
+    public void close() {
+        MappedImageFactory.release(bufferedImage);
+        bufferedImage = null;
+        encodedImage = null;
+    }
 }
@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.io.CountingOutputStream;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders many placeholders in parallel, e.g. when a catalog is regenerated:
+ * <pre>
+ * JTxt2ImgBatch.Result result = JTxt2ImgBatch.create()
+ *         .parallelism(8)
+ *         .run(items);
+ * </pre>
+ * A failing item is recorded in the {@link Result} and does not abort the batch.
+ * Workers share the font metrics cache and, if set, an {@link EncodedImageCache}.
+ */
+public final class JTxt2ImgBatch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JTxt2ImgBatch.class);
+
+    private ExecutorService executorService;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight;
+    private EncodedImageCache encodedImageCache;
+
+    private JTxt2ImgBatch() {
+    }
+
+    public static JTxt2ImgBatch create() {
+        return new JTxt2ImgBatch();
+    }
+
+    /**
+     * Runs the batch on the given executor, which is left running. By default a
+     * {@link ForkJoinPool} of {@link #parallelism(int)} workers is used for each run.
+     */
+    public JTxt2ImgBatch executor(final ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    public JTxt2ImgBatch parallelism(final int parallelism) {
+        Validate.isTrue(parallelism > 0, "Parallelism must be positive: %d", parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Limits how many items are queued at once, so huge item sources are consumed lazily.
+     * Defaults to four times the parallelism.
+     */
+    public JTxt2ImgBatch maxInFlight(final int maxInFlight) {
+        Validate.isTrue(maxInFlight > 0, "Max in flight items must be positive: %d", maxInFlight);
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public JTxt2ImgBatch cache(final EncodedImageCache encodedImageCache) {
+        this.encodedImageCache = encodedImageCache;
+        return this;
+    }
+
+    public Result run(final Iterable<Item> items) {
+        Validate.notNull(items, "Items must not be null");
+
+        final int permits = maxInFlight > 0 ? maxInFlight : parallelism * 4;
+        final Semaphore inFlight = new Semaphore(permits);
+        final Stats stats = new Stats();
+        final ExecutorService executor = executorService != null ? executorService : new ForkJoinPool(parallelism);
+
+        long start = System.nanoTime();
+        long index = 0;
+        try {
+            for (final Item item : items) {
+                final long itemIndex = index++;
+                inFlight.acquire();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                stats.succeeded(render(item));
+                            } catch (Throwable e) {
+                                stats.failed(itemIndex, item, e);
+                                // recorded, but errors like OutOfMemoryError must still reach the executor
+                                if (e instanceof Error) {
+                                    throw (Error) e;
+                                }
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    stats.failed(itemIndex, item, e);
+                }
+            }
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JTxt2ImgIoRuntimeException("Batch was interrupted", e);
+        } finally {
+            if (executorService == null) {
+                shutdown(executor);
+            }
+        }
+
+        Result result = stats.toResult(index, System.nanoTime() - start);
+        if (LOG.isInfoEnabled()) {
+            LOG.info("{}", result);
+        }
+        return result;
+    }
+
+    private long render(Item item) throws IOException {
+        try (JTxt2Img jTxt2Img = JTxt2Img.withProperties(item.imgTextProperties).cache(encodedImageCache)) {
+            jTxt2Img.generate();
+            if (item.file != null) {
+                if (!jTxt2Img.write(item.file)) {
+                    throw new JTxt2ImgIoRuntimeException("No writer for " + item.file.getName());
+                }
+                return item.file.length();
+            }
+            CountingOutputStream outputStream = new CountingOutputStream(item.outputStream);
+            if (!jTxt2Img.write(outputStream)) {
+                throw new JTxt2ImgIoRuntimeException("No writer for the image placeholder");
+            }
+            return outputStream.getCount();
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A placeholder to render and where to write it. Streams are closed after writing.
+     */
+    public static final class Item {
+        private final ImgTextProperties imgTextProperties;
+        private final File file;
+        private final OutputStream outputStream;
+
+        private Item(ImgTextProperties imgTextProperties, File file, OutputStream outputStream) {
+            Validate.notNull(imgTextProperties, "Properties must not be null");
+            this.imgTextProperties = imgTextProperties;
+            this.file = file;
+            this.outputStream = outputStream;
+        }
+
+        public static Item toFile(final ImgTextProperties imgTextProperties, final File file) {
+            Validate.notNull(file, "File must not be null");
+            return new Item(imgTextProperties, file, null);
+        }
+
+        public static Item toStream(final ImgTextProperties imgTextProperties, final OutputStream outputStream) {
+            Validate.notNull(outputStream, "OutputStream must not be null");
+            return new Item(imgTextProperties, null, outputStream);
+        }
+
+        public ImgTextProperties getImgTextProperties() {
+            return imgTextProperties;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public String toString() {
+            return file != null ? file.getPath() : String.valueOf(imgTextProperties.getText());
+        }
+    }
+
+    public static final class Failure {
+        private final long index;
+        private final Item item;
+        private final Throwable exception;
+
+        Failure(long index, Item item, Throwable exception) {
+            this.index = index;
+            this.item = item;
+            this.exception = exception;
+        }
+
+        /**
+         * @return position of the item in the batch
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public Item getItem() {
+            return item;
+        }
+
+        public Throwable getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%s %s: %s", index, item, exception);
+        }
+    }
+
+    public static final class Result {
+        private final long itemCount;
+        private final long succeeded;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+        private final List<Failure> failures;
+
+        Result(long itemCount, long succeeded, long bytesWritten, long elapsedNanos, List<Failure> failures) {
+            this.itemCount = itemCount;
+            this.succeeded = succeeded;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+        }
+
+        public long getItemCount() {
+            return itemCount;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failures.size();
+        }
+
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getImagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : succeeded * 1e9 / elapsedNanos;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesWritten * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Batch of %s images: %s succeeded, %s failed, %s bytes in %.1f ms (%.1f images/s, %.1f KiB/s)",
+                    itemCount, succeeded, failures.size(), bytesWritten, elapsedNanos / 1e6,
+                    getImagesPerSecond(), getBytesPerSecond() / 1024);
+        }
+    }
+
+    private static final class Stats {
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+
+        void succeeded(long bytes) {
+            succeeded.incrementAndGet();
+            bytesWritten.addAndGet(bytes);
+        }
+
+        void failed(long index, Item item, Throwable e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Can't render batch item {}", item, e);
+            }
+            failures.add(new Failure(index, item, e));
+        }
+
+        Result toResult(long itemCount, long elapsedNanos) {
+            List<Failure> sorted;
+            synchronized (failures) {
+                sorted = new ArrayList<>(failures);
+            }
+            Collections.sort(sorted, new Comparator<Failure>() {
+                @Override
+                public int compare(Failure o1, Failure o2) {
+                    return Long.compare(o1.index, o2.index);
+                }
+            });
+            return new Result(itemCount, succeeded.get(), bytesWritten.get(), elapsedNanos, Collections.unmodifiableList(sorted));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * Single pass parser of placeholder URL paths, {@code /size[/bgColor[/fgColor]][/text][.format]}, e.g.
+ * {@code /300x250/ff0000/000/Hello.png}. The size is {@code WIDTHxHEIGHT} or a single number for a square,
+ * colors are 3 or 6 hex digits like {@link CoreHelper#COLOR_REGEXP}, the text is URL decoded and the
+ * format extension is only allowed on the last segment. Malformed paths and sizes beyond
+ * {@link #DEF_MAX_WIDTH}x{@link #DEF_MAX_HEIGHT}, or the given limits, are rejected with
+ * an {@link IllegalArgumentException}. The limits are separate from {@link CoreHelper#setMaxSize}, so raising
+ * those for streamed banners doesn't let untrusted paths request huge in-memory renders.
+ */
+public final class PlaceholderPathParser {
+
+    public static final int MAX_PATH_LENGTH = 1024;
+    public static final int MAX_TEXT_LENGTH = 256;
+    public static final int DEF_MAX_WIDTH = CoreHelper.DEF_PLACEHOLDER_MAX_WIDTH;
+    public static final int DEF_MAX_HEIGHT = CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT;
+
+    private static final ImgTextProperties.IMG_FORMAT DEF_FORMAT = ImgTextProperties.IMG_FORMAT.valueOf(CoreHelper.DEF_PLACEHOLDER_FORMAT.toUpperCase());
+
+    private PlaceholderPathParser() {
+    }
+
+    public static RenderSpec parse(final CharSequence path) {
+        return parse(path, null);
+    }
+
+    /**
+     * @param base supplies everything the path doesn't, e.g. the font; may be {@code null} for the defaults
+     */
+    public static RenderSpec parse(final CharSequence path, final RenderSpec base) {
+        return parse(path, base, DEF_MAX_WIDTH, DEF_MAX_HEIGHT);
+    }
+
+    /**
+     * @param maxWidth  largest accepted width, capped by {@link CoreHelper#getMaxWidth()}
+     * @param maxHeight largest accepted height, capped by {@link CoreHelper#getMaxHeight()}
+     */
+    public static RenderSpec parse(final CharSequence path, final RenderSpec base, final int maxWidth, final int maxHeight) {
+        Validate.notNull(path, "Path must not be null");
+        Validate.isTrue(maxWidth >= CoreHelper.DEF_PLACEHOLDER_MIN_WIDTH, "Invalid max width: %d", maxWidth);
+        Validate.isTrue(maxHeight >= CoreHelper.DEF_PLACEHOLDER_MIN_HEIGHT, "Invalid max height: %d", maxHeight);
+        int length = path.length();
+        Validate.isTrue(length <= MAX_PATH_LENGTH, "Path is too long: %d", length);
+
+        int pos = 0;
+        if (pos < length && path.charAt(pos) == '/') {
+            pos++;
+        }
+        if (length > pos && path.charAt(length - 1) == '/') {
+            length--;
+        }
+        Validate.isTrue(pos < length, "Path must contain the image size");
+
+        ImgTextProperties.IMG_FORMAT format = null;
+        int lastSegment = Math.max(pos, lastIndexOf(path, '/', pos, length) + 1);
+        int dot = lastIndexOf(path, '.', lastSegment, length);
+        if (dot >= 0) {
+            format = parseFormat(path, dot + 1, length);
+            if (format != null) {
+                length = dot;
+            }
+        }
+
+        // size
+        int end = indexOf(path, '/', pos, length);
+        int x = indexOf(path, 'x', pos, end);
+        int width = parseDimension(path, pos, x >= 0 ? x : end, CoreHelper.DEF_PLACEHOLDER_MIN_WIDTH,
+                Math.min(maxWidth, CoreHelper.getMaxWidth()));
+        int height = x >= 0
+                ? parseDimension(path, x + 1, end, CoreHelper.DEF_PLACEHOLDER_MIN_HEIGHT, Math.min(maxHeight, CoreHelper.getMaxHeight()))
+                : width;
+        pos = end + 1;
+
+        // colors
+        int bgColor = -1;
+        int fgColor = -1;
+        for (int i = 0; i < 2 && pos < length; i++) {
+            end = indexOf(path, '/', pos, length);
+            int color = parseColor(path, pos, end);
+            if (color < 0) {
+                break;
+            }
+            if (i == 0) {
+                bgColor = color;
+            } else {
+                fgColor = color;
+            }
+            pos = end + 1;
+        }
+
+        // text
+        String text = null;
+        if (pos < length) {
+            Validate.isTrue(indexOf(path, '/', pos, length) == length, "Unexpected segment after the text at %d", pos);
+            Validate.isTrue(length - pos <= MAX_TEXT_LENGTH * 3, "Text is too long");
+            text = decode(path.subSequence(pos, length).toString());
+            Validate.isTrue(text.length() <= MAX_TEXT_LENGTH, "Text is too long");
+            Validate.isTrue(!text.trim().isEmpty(), "Text must not be blank");
+        } else {
+            text = width + "x" + height;
+        }
+
+        RenderSpec renderSpec = base != null ? base.text(text) : RenderSpec.withText(text).format(DEF_FORMAT);
+        renderSpec = renderSpec.size(width, height);
+        if (bgColor >= 0) {
+            renderSpec = renderSpec.backgroundColor(bgColor);
+        }
+        if (fgColor >= 0) {
+            renderSpec = renderSpec.foregroundColor(fgColor);
+        }
+        if (format != null) {
+            renderSpec = renderSpec.format(format);
+        }
+        return renderSpec;
+    }
+
+    private static int parseDimension(CharSequence path, int from, int to, int min, int max) {
+        Validate.isTrue(from < to, "Missing image size at %d", from);
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = path.charAt(i) - '0';
+            Validate.isTrue(digit >= 0 && digit <= 9, "Invalid image size at %d", i);
+            value = value * 10 + digit;
+            Validate.isTrue(value <= max, "Image size exceeds %d", max);
+        }
+        Validate.isTrue(value >= min, "Image size must be at least %d", min);
+        return value;
+    }
+
+    /**
+     * @return packed color or -1 if the segment is not a color
+     */
+    private static int parseColor(CharSequence path, int from, int to) {
+        int digits = to - from;
+        if (digits != 3 && digits != 6) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(path.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        if (digits == 3) {
+            // same padding as CoreHelper.hex2Rgb, "abc" is "abcccc"
+            int last = value & 0xf;
+            value = (value << 12) | (last << 8) | (last << 4) | last;
+        }
+        return value;
+    }
+
+    private static ImgTextProperties.IMG_FORMAT parseFormat(CharSequence path, int from, int to) {
+        if (regionMatches(path, from, to, "png")) {
+            return ImgTextProperties.IMG_FORMAT.PNG;
+        }
+        if (regionMatches(path, from, to, "jpg") || regionMatches(path, from, to, "jpeg")) {
+            return ImgTextProperties.IMG_FORMAT.JPG;
+        }
+        if (regionMatches(path, from, to, "gif")) {
+            return ImgTextProperties.IMG_FORMAT.GIF;
+        }
+        return null;
+    }
+
+    private static boolean regionMatches(CharSequence path, int from, int to, String value) {
+        if (to - from != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(path.charAt(from + i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence path, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (path.charAt(i) == c) {
+                return i;
+            }
+        }
+        return c == '/' ? to : -1;
+    }
+
+    private static int lastIndexOf(CharSequence path, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (path.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String decode(String text) {
+        if (text.indexOf('%') < 0 && text.indexOf('+') < 0) {
+            return text;
+        }
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
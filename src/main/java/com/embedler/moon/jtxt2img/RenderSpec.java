@@ -0,0 +1,282 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+
+/**
+ * Immutable, fully resolved render parameters. Colors are packed {@code 0xRRGGBB} ints, so
+ * nothing is parsed again while rendering. Instances are thread safe and can be shared between requests, e.g.
+ * {@code RenderSpec.withText("Hello").size(300, 250).backgroundColor(0xff0000).format(IMG_FORMAT.PNG)}.
+ */
+public final class RenderSpec {
+
+    private final String text;
+    private final int width;
+    private final int height;
+    private final int backgroundColor;
+    private final int foregroundColor;
+    private final ImgTextProperties.IMG_FORMAT format;
+    private final Font font;
+    private final EncodeOptions encodeOptions;
+    private final RasterStorage rasterStorage;
+    private final TextRenderer textRenderer;
+    private final TextWrap textWrap;
+    private final BackgroundTemplate backgroundTemplate;
+    private final int hash;
+
+    private RenderSpec(String text, int width, int height, int backgroundColor, int foregroundColor,
+                       ImgTextProperties.IMG_FORMAT format, Font font, EncodeOptions encodeOptions, RasterStorage rasterStorage,
+                       TextRenderer textRenderer, TextWrap textWrap, BackgroundTemplate backgroundTemplate) {
+        this.text = text;
+        this.width = width;
+        this.height = height;
+        this.backgroundColor = backgroundColor & 0xffffff;
+        this.foregroundColor = foregroundColor & 0xffffff;
+        this.format = format;
+        this.font = font;
+        this.encodeOptions = encodeOptions;
+        this.rasterStorage = rasterStorage;
+        this.textRenderer = textRenderer;
+        this.textWrap = textWrap;
+        this.backgroundTemplate = backgroundTemplate;
+
+        int result = text.hashCode();
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + this.backgroundColor;
+        result = 31 * result + this.foregroundColor;
+        result = 31 * result + format.hashCode();
+        result = 31 * result + font.hashCode();
+        result = 31 * result + encodeOptions.hashCode();
+        result = 31 * result + rasterStorage.hashCode();
+        result = 31 * result + textRenderer.hashCode();
+        result = 31 * result + textWrap.hashCode();
+        result = 31 * result + (backgroundTemplate != null ? backgroundTemplate.hashCode() : 0);
+        this.hash = result;
+    }
+
+    /**
+     * Spec with the text and defaults for everything else, see {@link ImgTextPropertiesAccessor}.
+     */
+    public static RenderSpec withText(final String text) {
+        Validate.notBlank(text, "Image text must not be blank");
+        return new RenderSpec(text, CoreHelper.DEF_PLACEHOLDER_WIDTH, CoreHelper.DEF_PLACEHOLDER_HEIGHT,
+                CoreHelper.DEF_PLACEHOLDER_BGCOLOR_PARSED.getRGB(), CoreHelper.DEF_PLACEHOLDER_FGCOLOR_PARSED.getRGB(),
+                ImgTextProperties.IMG_FORMAT.JPG, CoreHelper.DEF_PLACEHOLDER_FONT, EncodeOptions.DEFAULT,
+                MappedImageFactory.getDefaultRasterStorage(), TextRenderer.getDefault(), TextWrap.NONE, null);
+    }
+
+    /**
+     * Resolves the properties once, replacing invalid or missing values with the defaults.
+     */
+    public static RenderSpec of(final ImgTextProperties imgTextProperties) {
+        return of(new ImgTextPropertiesAccessor(imgTextProperties));
+    }
+
+    public static RenderSpec of(final ImgTextPropertiesAccessor accessor) {
+        Validate.notNull(accessor, "Accessor must not be null");
+        return new RenderSpec(accessor.getText(), accessor.getWidth(), accessor.getHeight(),
+                accessor.getBackgroundColor().getRGB(), accessor.getForegroundColor().getRGB(),
+                accessor.getFormat(), accessor.getFont(), accessor.getEncodeOptions(), accessor.getRasterStorage(),
+                accessor.getTextRenderer(), accessor.getTextWrap(), accessor.getBackgroundTemplate());
+    }
+
+    public RenderSpec text(final String text) {
+        Validate.notBlank(text, "Image text must not be blank");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec size(final int width, final int height) {
+        Validate.isTrue(width >= CoreHelper.DEF_PLACEHOLDER_MIN_WIDTH && width <= CoreHelper.getMaxWidth(),
+                "Width is out of range: %d", width);
+        Validate.isTrue(height >= CoreHelper.DEF_PLACEHOLDER_MIN_HEIGHT && height <= CoreHelper.getMaxHeight(),
+                "Height is out of range: %d", height);
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    /**
+     * @param rgb packed {@code 0xRRGGBB} color, the alpha byte is ignored
+     */
+    public RenderSpec backgroundColor(final int rgb) {
+        return new RenderSpec(text, width, height, rgb, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    /**
+     * @param rgb packed {@code 0xRRGGBB} color, the alpha byte is ignored
+     */
+    public RenderSpec foregroundColor(final int rgb) {
+        return new RenderSpec(text, width, height, backgroundColor, rgb, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec format(final ImgTextProperties.IMG_FORMAT format) {
+        Validate.notNull(format, "Format must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec font(final Font font) {
+        Validate.notNull(font, "Font must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec encodeOptions(final EncodeOptions encodeOptions) {
+        Validate.notNull(encodeOptions, "Encode options must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec rasterStorage(final RasterStorage rasterStorage) {
+        Validate.notNull(rasterStorage, "Raster storage must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec textRenderer(final TextRenderer textRenderer) {
+        Validate.notNull(textRenderer, "Text renderer must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    public RenderSpec textWrap(final TextWrap textWrap) {
+        Validate.notNull(textWrap, "Text wrap must not be null");
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    /**
+     * @param backgroundTemplate background image, or {@code null} for the solid background color
+     */
+    public RenderSpec backgroundTemplate(final BackgroundTemplate backgroundTemplate) {
+        return new RenderSpec(text, width, height, backgroundColor, foregroundColor, format, font, encodeOptions, rasterStorage, textRenderer, textWrap, backgroundTemplate);
+    }
+
+    /**
+     * Mutable copy for the {@link JTxt2Img} builder.
+     */
+    public ImgTextProperties toProperties() {
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setText(text);
+        imgTextProperties.setWidth(width);
+        imgTextProperties.setHeight(height);
+        imgTextProperties.setBgColor(StringUtils.leftPad(Integer.toHexString(backgroundColor), 6, '0'));
+        imgTextProperties.setFgColor(StringUtils.leftPad(Integer.toHexString(foregroundColor), 6, '0'));
+        imgTextProperties.setFormat(format);
+        imgTextProperties.setFont(font);
+        imgTextProperties.setEncodeOptions(encodeOptions);
+        imgTextProperties.setRasterStorage(rasterStorage);
+        imgTextProperties.setTextRenderer(textRenderer);
+        imgTextProperties.setTextWrap(textWrap);
+        imgTextProperties.setBackgroundTemplate(backgroundTemplate);
+        return imgTextProperties;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return packed {@code 0xRRGGBB} color
+     */
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * @return packed {@code 0xRRGGBB} color
+     */
+    public int getForegroundColor() {
+        return foregroundColor;
+    }
+
+    public ImgTextProperties.IMG_FORMAT getFormat() {
+        return format;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public EncodeOptions getEncodeOptions() {
+        return encodeOptions;
+    }
+
+    public RasterStorage getRasterStorage() {
+        return rasterStorage;
+    }
+
+    public TextRenderer getTextRenderer() {
+        return textRenderer;
+    }
+
+    public TextWrap getTextWrap() {
+        return textWrap;
+    }
+
+    /**
+     * @return the template or {@code null} for a solid background
+     */
+    public BackgroundTemplate getBackgroundTemplate() {
+        return backgroundTemplate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RenderSpec)) {
+            return false;
+        }
+        RenderSpec that = (RenderSpec) o;
+        return hash == that.hash &&
+                width == that.width &&
+                height == that.height &&
+                backgroundColor == that.backgroundColor &&
+                foregroundColor == that.foregroundColor &&
+                format == that.format &&
+                text.equals(that.text) &&
+                font.equals(that.font) &&
+                encodeOptions.equals(that.encodeOptions) &&
+                rasterStorage.equals(that.rasterStorage) &&
+                textRenderer == that.textRenderer &&
+                textWrap == that.textWrap &&
+                (backgroundTemplate != null ? backgroundTemplate.equals(that.backgroundTemplate) : that.backgroundTemplate == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderSpec: %dx%d/%06x/%06x/%s.%s", width, height, backgroundColor, foregroundColor,
+                text, format.name().toLowerCase());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Finds the largest font size at which a text fits into the given box.
+ * The text is measured once at a reference size, the size is scaled analytically
+ * and then refined with a bounded binary search. The result is the same as a
+ * one point at a time descent from {@link CoreHelper#DEF_PLACEHOLDER_FONT_SIZE}.
+ */
+public final class TextFitter {
+
+    static final int MAX_FONT_SIZE = CoreHelper.DEF_PLACEHOLDER_FONT_SIZE - 1;
+    static final int MIN_FONT_SIZE = 1;
+    static final int REFERENCE_FONT_SIZE = 100;
+
+    static final FontRenderContext FONT_RENDER_CONTEXT = createFontRenderContext();
+
+    private TextFitter() {
+    }
+
+    public static ImageProcessor.ImageTextSettings fit(final String text, final Font font, final int width, final int height) {
+        Validate.notNull(text, "Text must not be null");
+        Validate.notNull(font, "Font must not be null");
+
+        final Measurer measurer = new Measurer(text, FontRegistry.derivedFonts(font), width, height);
+
+        int estimate = MAX_FONT_SIZE;
+        Rectangle2D reference = measurer.measure(REFERENCE_FONT_SIZE);
+        if (reference.getWidth() > 0 && reference.getHeight() > 0) {
+            double scale = Math.min(width / reference.getWidth(), height / reference.getHeight());
+            estimate = (int) Math.max(MIN_FONT_SIZE, Math.min(MAX_FONT_SIZE, Math.floor(REFERENCE_FONT_SIZE * scale)));
+        }
+
+        // bracket the answer around the estimate: 'lo' always fits, 'hi' never does
+        int lo;
+        int hi;
+        int step = 1;
+        if (measurer.fits(estimate)) {
+            lo = estimate;
+            hi = estimate + step;
+            while (hi <= MAX_FONT_SIZE && measurer.fits(hi)) {
+                lo = hi;
+                step <<= 1;
+                hi = lo + step;
+            }
+            hi = Math.min(hi, MAX_FONT_SIZE + 1);
+        } else {
+            hi = estimate;
+            lo = estimate - step;
+            while (lo > MIN_FONT_SIZE && !measurer.fits(lo)) {
+                hi = lo;
+                step <<= 1;
+                lo = hi - step;
+            }
+            lo = Math.max(lo, MIN_FONT_SIZE);
+        }
+
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (measurer.fits(mid)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+
+        ImageProcessor.ImageTextSettings settings = new ImageProcessor.ImageTextSettings(measurer.font(lo), lo, measurer.measure(lo));
+        Metrics.get().fitCompleted(measurer.measurements);
+        return settings;
+    }
+
+    private static FontRenderContext createFontRenderContext() {
+        BufferedImage bufferedImage = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = bufferedImage.createGraphics();
+        try {
+            return g.getFontRenderContext();
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static final class Measurer {
+
+        private final String text;
+        private final FontRegistry.DerivedFonts fonts;
+        private final int width;
+        private final int height;
+
+        private int lastSize;
+        private Font lastFont;
+        private Rectangle2D lastBounds;
+        private int measurements;
+
+        Measurer(String text, FontRegistry.DerivedFonts fonts, int width, int height) {
+            this.text = text;
+            this.fonts = fonts;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean fits(int fontSize) {
+            if (fontSize <= MIN_FONT_SIZE) {
+                return true;
+            }
+            Rectangle2D rect = measure(fontSize);
+            return rect.getWidth() < width && rect.getHeight() < height;
+        }
+
+        Font font(int fontSize) {
+            measure(fontSize);
+            return lastFont;
+        }
+
+        Rectangle2D measure(int fontSize) {
+            if (lastFont == null || lastSize != fontSize) {
+                lastSize = fontSize;
+                lastFont = fonts.get(fontSize);
+                lastBounds = lastFont.getStringBounds(text, FONT_RENDER_CONTEXT);
+                measurements++;
+            }
+            return lastBounds;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * How the text is drawn into the raster, both produce the same pixels.
+ * The default is read from the {@value #PROPERTY} system property, unknown values fall back to {@link #JAVA2D}.
+ */
+public enum TextRenderer {
+
+    /**
+     * {@link java.awt.Graphics2D#drawString(String, int, int)}.
+     */
+    JAVA2D,
+
+    /**
+     * Glyph bitmaps cached in {@link com.embedler.moon.jtxt2img.glyph.GlyphAtlas} and copied into the packed rows,
+     * falls back to {@link #JAVA2D} for text that needs complex layout.
+     */
+    GLYPH_ATLAS;
+
+    public static final String PROPERTY = "jtxt2img.textRenderer";
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextRenderer.class);
+
+    private static final TextRenderer DEFAULT = parse(System.getProperty(PROPERTY));
+
+    public static TextRenderer getDefault() {
+        return DEFAULT;
+    }
+
+    private static TextRenderer parse(String value) {
+        if (value == null) {
+            return JAVA2D;
+        }
+        for (TextRenderer textRenderer : values()) {
+            if (textRenderer.name().equalsIgnoreCase(value.trim())) {
+                return textRenderer;
+            }
+        }
+        if (LOG.isWarnEnabled()) {
+            LOG.warn("Unknown {} '{}', using {}", PROPERTY, value, JAVA2D);
+        }
+        return JAVA2D;
+    }
+}
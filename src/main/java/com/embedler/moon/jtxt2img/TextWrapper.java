@@ -0,0 +1,391 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.cache.LineBreakCache;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextMeasurer;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.text.BreakIterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the largest font size at which a text wrapped at word boundaries fits into the given box.
+ * Pen positions are measured once at a reference size and line widths between break opportunities are
+ * scaled from them for every candidate size, only the chosen size is laid out again and the result is
+ * cached in {@link LineBreakCache}. Text that needs complex layout is broken with a {@link LineBreakMeasurer}.
+ * Words are never split unless the text doesn't fit at the minimum size.
+ */
+public final class TextWrapper {
+
+    // creating a line break iterator costs more than breaking a short text
+    private static final ThreadLocal<BreakIterator> LINE_INSTANCE = new ThreadLocal<BreakIterator>() {
+        @Override
+        protected BreakIterator initialValue() {
+            return BreakIterator.getLineInstance();
+        }
+    };
+
+    private TextWrapper() {
+    }
+
+    public static ImageProcessor.ImageTextSettings fit(final String text, final Font font, final int width, final int height) {
+        Validate.notNull(text, "Text must not be null");
+        Validate.notNull(font, "Font must not be null");
+        if (text.isEmpty()) {
+            return TextFitter.fit(text, font, width, height);
+        }
+
+        final Measurer measurer = new Measurer(text, FontRegistry.derivedFonts(font), width, height);
+
+        // 'lo' always fits, 'hi' never does
+        int lo = TextFitter.MIN_FONT_SIZE;
+        int hi = TextFitter.MAX_FONT_SIZE + 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (measurer.fitsScaled(mid)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+
+        // rounded advances may differ slightly from the scaled ones, settle on real layouts
+        Lines lines = measurer.layout(lo);
+        if (measurer.fits(lines)) {
+            while (lo < TextFitter.MAX_FONT_SIZE) {
+                Lines larger = measurer.layout(lo + 1);
+                if (!measurer.fits(larger)) {
+                    break;
+                }
+                lo++;
+                lines = larger;
+            }
+        } else {
+            while (lo > TextFitter.MIN_FONT_SIZE && !measurer.fits(lines)) {
+                lo--;
+                lines = measurer.layout(lo);
+            }
+        }
+
+        ImageProcessor.ImageTextSettings settings = new ImageProcessor.ImageTextSettings(measurer.font(lo), lo, lines);
+        Metrics.get().fitCompleted(measurer.measurements);
+        return settings;
+    }
+
+    /**
+     * Breaks the text into lines no wider than {@code wrapWidth}, looked up in the shared {@link LineBreakCache} first.
+     */
+    public static Lines breakLines(final String text, final Font font, final int wrapWidth) {
+        Validate.notEmpty(text, "Text must not be empty");
+        Validate.notNull(font, "Font must not be null");
+        Validate.isTrue(wrapWidth > 0, "Wrap width must be positive: %d", wrapWidth);
+
+        LineBreakCache lineBreakCache = LineBreakCache.shared();
+        Lines lines = lineBreakCache.get(font, text, wrapWidth);
+        if (lines == null) {
+            lines = layout(text, font, wrapWidth);
+            lineBreakCache.put(font, text, wrapWidth, lines);
+        }
+        return lines;
+    }
+
+    private static Lines layout(String text, Font font, int wrapWidth) {
+        float[] positions = penPositions(text, font);
+        BreakIterator breakIterator = LINE_INSTANCE.get();
+        breakIterator.setText(text);
+        LineBreakMeasurer lineBreakMeasurer = null;
+        TextMeasurer textMeasurer = null;
+        if (positions == null) {
+            AttributedString attributedString = new AttributedString(text);
+            attributedString.addAttribute(TextAttribute.FONT, font);
+            AttributedCharacterIterator iterator = attributedString.getIterator();
+            lineBreakMeasurer = new LineBreakMeasurer(iterator, breakIterator, TextFitter.FONT_RENDER_CONTEXT);
+            textMeasurer = new TextMeasurer(iterator, TextFitter.FONT_RENDER_CONTEXT);
+        }
+
+        int length = text.length();
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        float[] widths = new float[8];
+        int count = 0;
+        boolean splitsWords = false;
+        int start = 0;
+        while (start < length) {
+            int limit;
+            if (lineBreakMeasurer == null) {
+                limit = nextOffset(text, positions, breakIterator, start, wrapWidth);
+            } else {
+                limit = lineBreakMeasurer.nextOffset(wrapWidth);
+                lineBreakMeasurer.setPosition(limit);
+            }
+            int end = trimEnd(text, start, limit);
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                widths = Arrays.copyOf(widths, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            if (positions != null) {
+                widths[count] = positions[end] - positions[start];
+            } else {
+                widths[count] = end > start ? textMeasurer.getAdvanceBetween(start, end) : 0f;
+            }
+            count++;
+            splitsWords |= limit < length && !breakIterator.isBoundary(limit);
+            start = limit;
+        }
+
+        LineMetrics lineMetrics = font.getLineMetrics(text, TextFitter.FONT_RENDER_CONTEXT);
+        return new Lines(text, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), Arrays.copyOf(widths, count),
+                lineMetrics.getAscent(), lineMetrics.getAscent() + lineMetrics.getDescent() + lineMetrics.getLeading(), splitsWords);
+    }
+
+    /**
+     * Same as {@link LineBreakMeasurer#nextOffset(float)} for text whose chars map to glyphs one to one:
+     * the furthest break opportunity whose line, without trailing whitespace, is not wider than the wrap width,
+     * or a split inside a word that is wider on its own.
+     */
+    private static int nextOffset(String text, float[] positions, BreakIterator breakIterator, int start, float wrapWidth) {
+        int offset = -1;
+        for (int b = breakIterator.following(start); b != BreakIterator.DONE; b = breakIterator.next()) {
+            if (positions[trimEnd(text, start, b)] - positions[start] > wrapWidth) {
+                break;
+            }
+            offset = b;
+        }
+        if (offset < 0) {
+            offset = start + 1;
+            while (offset < text.length() && positions[offset + 1] - positions[start] <= wrapWidth) {
+                offset++;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * @return pen positions per char and one past the end, or {@code null} if chars don't map to glyphs one to one,
+     * e.g. ligatures or complex scripts
+     */
+    private static float[] penPositions(String text, Font font) {
+        GlyphVector glyphVector = font.createGlyphVector(TextFitter.FONT_RENDER_CONTEXT, text);
+        if (glyphVector.getNumGlyphs() != text.length()) {
+            return null;
+        }
+        float[] positions = glyphVector.getGlyphPositions(0, text.length() + 1, null);
+        float[] result = new float[text.length() + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions[2 * i];
+        }
+        return result;
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Line breaks of a text at one font size and wrap width, immutable.
+     */
+    public static final class Lines {
+
+        private final String text;
+        private final int[] starts;
+        private final int[] ends;
+        private final float[] widths;
+        private final float ascent;
+        private final float lineHeight;
+        private final boolean splitsWords;
+        private final float maxWidth;
+
+        Lines(String text, int[] starts, int[] ends, float[] widths, float ascent, float lineHeight, boolean splitsWords) {
+            this.text = text;
+            this.starts = starts;
+            this.ends = ends;
+            this.widths = widths;
+            this.ascent = ascent;
+            this.lineHeight = lineHeight;
+            this.splitsWords = splitsWords;
+            float max = 0f;
+            for (float w : widths) {
+                max = Math.max(max, w);
+            }
+            this.maxWidth = max;
+        }
+
+        public int getLineCount() {
+            return starts.length;
+        }
+
+        /**
+         * @return the line without trailing whitespace
+         */
+        public String getLine(final int index) {
+            return text.substring(starts[index], ends[index]);
+        }
+
+        public float getLineWidth(final int index) {
+            return widths[index];
+        }
+
+        public float getMaxWidth() {
+            return maxWidth;
+        }
+
+        public float getAscent() {
+            return ascent;
+        }
+
+        /**
+         * Distance between consecutive baselines, ascent plus descent plus leading.
+         */
+        public float getLineHeight() {
+            return lineHeight;
+        }
+
+        public float getHeight() {
+            return lineHeight * starts.length;
+        }
+
+        /**
+         * @return {@code true} if a word was too wide for the wrap width and had to be split
+         */
+        public boolean isSplittingWords() {
+            return splitsWords;
+        }
+    }
+
+    private static final class Measurer {
+
+        private final String text;
+        private final FontRegistry.DerivedFonts fonts;
+        private final int width;
+        private final int height;
+        private final int[] breaks;
+        // pen positions at the reference size, one per char and one past the end, shared by all candidate sizes
+        private final float[] referencePositions;
+        private final TextMeasurer referenceMeasurer;
+        private final Map<Long, Float> referenceAdvances;
+        private final float referenceLineHeight;
+
+        private int measurements;
+
+        Measurer(String text, FontRegistry.DerivedFonts fonts, int width, int height) {
+            this.text = text;
+            this.fonts = fonts;
+            this.width = width;
+            this.height = height;
+
+            Font referenceFont = fonts.get(TextFitter.REFERENCE_FONT_SIZE);
+            this.referencePositions = penPositions(text, referenceFont);
+            if (referencePositions != null) {
+                this.referenceMeasurer = null;
+                this.referenceAdvances = null;
+            } else {
+                AttributedString attributedString = new AttributedString(text);
+                attributedString.addAttribute(TextAttribute.FONT, referenceFont);
+                this.referenceMeasurer = new TextMeasurer(attributedString.getIterator(), TextFitter.FONT_RENDER_CONTEXT);
+                this.referenceAdvances = new HashMap<>();
+            }
+            LineMetrics lineMetrics = referenceFont.getLineMetrics(text, TextFitter.FONT_RENDER_CONTEXT);
+            this.referenceLineHeight = lineMetrics.getAscent() + lineMetrics.getDescent() + lineMetrics.getLeading();
+
+            BreakIterator breakIterator = LINE_INSTANCE.get();
+            breakIterator.setText(text);
+            int[] positions = new int[16];
+            int count = 0;
+            for (int b = breakIterator.next(); b != BreakIterator.DONE; b = breakIterator.next()) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count++] = b;
+            }
+            this.breaks = Arrays.copyOf(positions, count);
+        }
+
+        boolean fitsScaled(int fontSize) {
+            if (fontSize <= TextFitter.MIN_FONT_SIZE) {
+                return true;
+            }
+            double scale = (double) fontSize / TextFitter.REFERENCE_FONT_SIZE;
+            double maxAdvance = width / scale;
+            int maxLines = (int) Math.ceil(height / (referenceLineHeight * scale)) - 1;
+            int lines = 0;
+            int start = 0;
+            int next = 0;
+            while (start < text.length()) {
+                if (++lines > maxLines) {
+                    return false;
+                }
+                int end = -1;
+                while (next < breaks.length && referenceAdvance(start, breaks[next]) < maxAdvance) {
+                    end = breaks[next++];
+                }
+                if (end < 0) {
+                    return false;
+                }
+                start = end;
+            }
+            return true;
+        }
+
+        boolean fits(Lines lines) {
+            return !lines.isSplittingWords() && lines.getMaxWidth() < width && lines.getHeight() < height;
+        }
+
+        Font font(int fontSize) {
+            return fonts.get(fontSize);
+        }
+
+        Lines layout(int fontSize) {
+            measurements++;
+            return breakLines(text, font(fontSize), width);
+        }
+
+        private float referenceAdvance(int start, int end) {
+            int trimmed = trimEnd(text, start, end);
+            if (referencePositions != null) {
+                return referencePositions[trimmed] - referencePositions[start];
+            }
+            Long key = ((long) start << 32) | trimmed;
+            Float advance = referenceAdvances.get(key);
+            if (advance == null) {
+                advance = trimmed > start ? referenceMeasurer.getAdvanceBetween(start, trimmed) : 0f;
+                referenceAdvances.put(key, advance);
+                measurements++;
+            }
+            return advance;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img;
+
+import com.embedler.moon.jtxt2img.async.RenderExecutors;
+import com.embedler.moon.jtxt2img.async.RenderFuture;
+import com.embedler.moon.jtxt2img.encoder.ImageWriterPool;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pays the one-time costs of the first render up front: font subsystem initialization, the ImageIO plugin
+ * scan, raster factory lookup and JIT compilation of the fitting and encoding code.
+ * <pre>
+ * WarmUp.Report report = WarmUp.create().fonts(font).formats(IMG_FORMAT.PNG).run();
+ * </pre>
+ * Warm-up renders are reported to the installed {@link com.embedler.moon.jtxt2img.metrics.RenderMetrics}
+ * like any other render and fill the font metrics and line break caches.
+ */
+public final class WarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+    public static final int DEF_ITERATIONS = 100;
+
+    private static final String SAMPLE = "0123456789x AaBbGgQqWwYy";
+    private static final int[][] SIZES = {{120, 60}, {300, 250}, {728, 90}, {160, 600}};
+
+    public enum Phase {
+        FONTS, IMAGE_IO, RASTERS, RENDER
+    }
+
+    private final List<Font> fonts = new ArrayList<>();
+    private final Set<ImgTextProperties.IMG_FORMAT> formats = EnumSet.noneOf(ImgTextProperties.IMG_FORMAT.class);
+    private int iterations = DEF_ITERATIONS;
+    private RenderSpec baseSpec = RenderSpec.withText("Warm up");
+
+    private WarmUp() {
+    }
+
+    /**
+     * @return a warm-up of the default font and the PNG, JPG and GIF formats
+     */
+    public static WarmUp create() {
+        return new WarmUp();
+    }
+
+    public WarmUp fonts(final Font... fonts) {
+        Validate.noNullElements(fonts, "Fonts must not be null");
+        this.fonts.clear();
+        this.fonts.addAll(Arrays.asList(fonts));
+        return this;
+    }
+
+    public WarmUp formats(final ImgTextProperties.IMG_FORMAT... formats) {
+        Validate.noNullElements(formats, "Formats must not be null");
+        this.formats.clear();
+        this.formats.addAll(Arrays.asList(formats));
+        return this;
+    }
+
+    /**
+     * Renders per font and format, each with a different text and size.
+     */
+    public WarmUp iterations(final int iterations) {
+        Validate.isTrue(iterations >= 0, "Iterations must not be negative: %d", iterations);
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Colors, encode options, text renderer and raster storage of the warm-up renders,
+     * text, size, font and format are replaced.
+     */
+    public WarmUp baseSpec(final RenderSpec baseSpec) {
+        Validate.notNull(baseSpec, "Base spec must not be null");
+        this.baseSpec = baseSpec;
+        return this;
+    }
+
+    public Report run() {
+        List<Font> warmFonts = fonts.isEmpty() ? Collections.singletonList(baseSpec.getFont()) : new ArrayList<>(fonts);
+        Set<ImgTextProperties.IMG_FORMAT> warmFormats = formats.isEmpty()
+                ? EnumSet.of(ImgTextProperties.IMG_FORMAT.PNG, ImgTextProperties.IMG_FORMAT.JPG, ImgTextProperties.IMG_FORMAT.GIF)
+                : EnumSet.copyOf(formats);
+        Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+
+        long start = System.nanoTime();
+        warmUpFonts(warmFonts);
+        start = phaseCompleted(nanos, Phase.FONTS, start);
+        warmUpImageIo(warmFormats);
+        start = phaseCompleted(nanos, Phase.IMAGE_IO, start);
+        warmUpRasters();
+        start = phaseCompleted(nanos, Phase.RASTERS, start);
+        int renders = warmUpRenders(warmFonts, warmFormats);
+        phaseCompleted(nanos, Phase.RENDER, start);
+
+        Report report = new Report(nanos, renders);
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Warm-up completed: {}", report);
+        }
+        return report;
+    }
+
+    public RenderFuture<Report> runAsync() {
+        return runAsync(RenderExecutors.defaultExecutor());
+    }
+
+    public RenderFuture<Report> runAsync(final Executor executor) {
+        return RenderFuture.submit(new Callable<Report>() {
+            @Override
+            public Report call() {
+                return run();
+            }
+        }, executor);
+    }
+
+    private static long phaseCompleted(Map<Phase, Long> nanos, Phase phase, long start) {
+        long now = System.nanoTime();
+        nanos.put(phase, now - start);
+        return now;
+    }
+
+    private static void warmUpFonts(List<Font> fonts) {
+        // the first Graphics2D and font metrics load the native font manager and fontconfig
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = scratch.createGraphics();
+        try {
+            for (Font font : fonts) {
+                g.getFontMetrics(font).stringWidth(SAMPLE);
+                Font derived = font.deriveFont(font.getSize2D() * 2);
+                derived.getStringBounds(SAMPLE, TextFitter.FONT_RENDER_CONTEXT);
+                derived.createGlyphVector(TextFitter.FONT_RENDER_CONTEXT, SAMPLE).getLogicalBounds();
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static void warmUpImageIo(Set<ImgTextProperties.IMG_FORMAT> formats) {
+        // scans the plugin registry and loads the native codecs, e.g. the JPEG library
+        Set<ImgTextProperties.IMG_FORMAT> encodedFormats = EnumSet.copyOf(formats);
+        if (encodedFormats.remove(ImgTextProperties.IMG_FORMAT.AUTO)) {
+            encodedFormats.add(ImgTextProperties.IMG_FORMAT.PNG);
+            encodedFormats.add(ImgTextProperties.IMG_FORMAT.GIF);
+        }
+        BufferedImage pixel = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        for (ImgTextProperties.IMG_FORMAT format : encodedFormats) {
+            ImageIO.getImageWritersByFormatName(format.name().toLowerCase()).hasNext();
+            try {
+                ImageWriterPool.shared().write(pixel, format, NullOutputStream.INSTANCE, EncodeOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new JTxt2ImgIoRuntimeException("Can't warm up " + format + " writer", e);
+            }
+        }
+    }
+
+    private static void warmUpRasters() {
+        // off-heap rasters go through the reflective SunWritableRaster constructor
+        BufferedImage pixel = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
+        BufferedImage image = MappedImageFactory.createCompatibleMappedImage(1, 1, pixel.getSampleModel(),
+                pixel.getColorModel(), StandardRasterStorage.DIRECT);
+        try {
+            Graphics2D g = image.createGraphics();
+            try {
+                g.fillRect(0, 0, 1, 1);
+            } finally {
+                g.dispose();
+            }
+        } finally {
+            MappedImageFactory.release(image);
+        }
+    }
+
+    private int warmUpRenders(List<Font> fonts, Set<ImgTextProperties.IMG_FORMAT> formats) {
+        int renders = 0;
+        for (int i = 0; i < iterations; i++) {
+            int[] size = SIZES[i % SIZES.length];
+            boolean wrapped = i % 2 == 1;
+            RenderSpec spec = baseSpec
+                    .text(wrapped ? "Warm up " + i + " with a longer wrapped text" : String.valueOf(i * 7919))
+                    .size(size[0], size[1])
+                    .textWrap(wrapped ? TextWrap.CENTER : TextWrap.NONE);
+            for (Font font : fonts) {
+                for (ImgTextProperties.IMG_FORMAT format : formats) {
+                    try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(spec.font(font).format(format)).generate()) {
+                        jTxt2Img.write(NullOutputStream.INSTANCE);
+                    }
+                    renders++;
+                }
+            }
+        }
+        return renders;
+    }
+
+    /**
+     * Time spent in each phase of a warm-up.
+     */
+    public static final class Report {
+
+        private final Map<Phase, Long> nanos;
+        private final int renders;
+
+        Report(Map<Phase, Long> nanos, int renders) {
+            this.nanos = nanos;
+            this.renders = renders;
+        }
+
+        public long getNanos(final Phase phase) {
+            Long value = nanos.get(phase);
+            return value != null ? value : 0L;
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (Long value : nanos.values()) {
+                total += value;
+            }
+            return total;
+        }
+
+        public int getRenders() {
+            return renders;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Phase, Long> entry : nanos.entrySet()) {
+                sb.append(entry.getKey().name().toLowerCase()).append('=')
+                        .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue())).append("ms, ");
+            }
+            return sb.append("total=").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos()))
+                    .append("ms, renders=").append(renders).toString();
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default executor for asynchronous renders, a bounded pool of daemon threads, one per processor,
+ * with a queue of {@value #DEF_QUEUE_CAPACITY} tasks. Virtual threads are opt-in with
+ * {@value #VIRTUAL_THREADS_PROPERTY}{@code =true} on runtimes that have them: each render thread keeps
+ * its own PNG and GIF encoders with a native {@code Deflater}, which a thread per task allocates again
+ * for every render.
+ */
+public final class RenderExecutors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderExecutors.class);
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "jtxt2img.async.virtualThreads";
+    public static final String QUEUE_CAPACITY_PROPERTY = "jtxt2img.async.queueCapacity";
+    public static final int DEF_QUEUE_CAPACITY = 1024;
+
+    private RenderExecutors() {
+    }
+
+    public static ExecutorService defaultExecutor() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return virtualThreadFactoryMethod() != null;
+    }
+
+    public static ExecutorService newBoundedExecutor(final int threads, final int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new DaemonThreadFactory("jtxt2img-render-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            Method method = virtualThreadFactoryMethod();
+            if (method != null) {
+                try {
+                    return (ExecutorService) method.invoke(null);
+                } catch (Exception e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Can't create virtual thread executor, falling back to a thread pool", e);
+                    }
+                }
+            }
+        }
+        return newBoundedExecutor(Runtime.getRuntime().availableProcessors(), Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEF_QUEUE_CAPACITY));
+    }
+
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final ExecutorService INSTANCE = createDefaultExecutor();
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
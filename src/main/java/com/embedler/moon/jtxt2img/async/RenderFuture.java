@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.async;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link java.util.concurrent.Future} of an asynchronous render that can notify callbacks on completion.
+ * Callbacks added after completion run immediately on the calling thread.
+ */
+public final class RenderFuture<V> extends FutureTask<V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderFuture.class);
+
+    private final List<RenderCallback<? super V>> callbacks = new ArrayList<>();
+    private boolean notified;
+
+    private RenderFuture(Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * Runs the task on the executor. A rejected task completes the future with a
+     * {@link RejectedExecutionException} instead of throwing.
+     */
+    public static <V> RenderFuture<V> submit(final Callable<V> callable, final Executor executor) {
+        Validate.notNull(callable, "Task must not be null");
+        Validate.notNull(executor, "Executor must not be null");
+        RenderFuture<V> future = new RenderFuture<>(callable);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    public RenderFuture<V> addCallback(final RenderCallback<? super V> callback) {
+        Validate.notNull(callback, "Callback must not be null");
+        synchronized (callbacks) {
+            if (!notified) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<RenderCallback<? super V>> pending;
+        synchronized (callbacks) {
+            notified = true;
+            pending = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (RenderCallback<? super V> callback : pending) {
+            notify(callback);
+        }
+    }
+
+    private void notify(RenderCallback<? super V> callback) {
+        V result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            invokeFailure(callback, e.getCause());
+            return;
+        } catch (CancellationException e) {
+            invokeFailure(callback, e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            invokeFailure(callback, e);
+            return;
+        }
+        try {
+            callback.onSuccess(result);
+        } catch (RuntimeException e) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error("Render callback failed", e);
+            }
+        }
+    }
+
+    private static void invokeFailure(RenderCallback<?> callback, Throwable cause) {
+        try {
+            callback.onFailure(cause);
+        } catch (RuntimeException e) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error("Render callback failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.cache;
+
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of encoded images in a directory, kept across restarts and shared by the JVMs of a host.
+ * Each image is a file named by the SHA-256 of its {@link EncodedImageCache.Key}. A memory mapped open addressing
+ * index of the hashes, sizes and access times answers lookups without touching the file system on a miss and
+ * drives the LRU eviction, which is bounded by the total size of the files.
+ * <p>
+ * Files are written to a temporary file and renamed, so readers never see a partial image, and index updates
+ * are serialized by a file lock. Lookups don't lock: they may miss an entry that is being added or moved, and
+ * the index is only a hint, the image is always read from the file named by the key's own hash.
+ */
+public final class DiskImageCache implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskImageCache.class);
+
+    public static final String INDEX_SLOTS_PROPERTY = "jtxt2img.diskCache.indexSlots";
+    public static final int DEF_INDEX_SLOTS = 1 << 16;
+
+    static final String INDEX_FILE = "index";
+    static final String TEMP_DIRECTORY = "tmp";
+    /**
+     * Part of every hash, changed when the rendering changes so old images are not served.
+     */
+    static final int CONTENT_VERSION = 1;
+
+    private static final int MAGIC = 0x4a32494d;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int BYTES_OFFSET = 16;
+
+    // slot: 32 bytes hash, 8 bytes file size (0 for a free slot), 8 bytes last access millis
+    private static final int HASH_SIZE = 32;
+    private static final int SIZE_OFFSET = HASH_SIZE;
+    private static final int ACCESS_OFFSET = HASH_SIZE + 8;
+    private static final int SLOT_SIZE = HASH_SIZE + 16;
+
+    private static final double MAX_LOAD = 0.75;
+    private static final double LOW_WATER = 0.9;
+    private static final long ACCESS_RESOLUTION_MILLIS = 1000;
+    private static final long TEMP_FILE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // one per directory, a JVM can't hold overlapping file locks
+    private static final ConcurrentHashMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final Path directory;
+    private final Path tempDirectory;
+    private final long maxBytes;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Object lock;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final int slots;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile boolean closed;
+
+    private DiskImageCache(Path directory, long maxBytes, int indexSlots) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory.toRealPath();
+        this.tempDirectory = Files.createDirectories(this.directory.resolve(TEMP_DIRECTORY));
+        this.maxBytes = maxBytes;
+        Object newLock = new Object();
+        Object existingLock = LOCKS.putIfAbsent(this.directory, newLock);
+        this.lock = existingLock != null ? existingLock : newLock;
+        this.channel = FileChannel.open(this.directory.resolve(INDEX_FILE),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+        boolean opened = false;
+        try {
+            synchronized (lock) {
+                FileLock fileLock = channel.lock();
+                try {
+                    int existingSlots = readSlots(channel);
+                    this.slots = existingSlots > 0 ? existingSlots : indexSlots;
+                    if (existingSlots <= 0) {
+                        channel.truncate(0);
+                    }
+                    this.index = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+                    if (existingSlots <= 0) {
+                        rebuild();
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            }
+            for (int i = 0; i < 256; i++) {
+                Files.createDirectories(this.directory.resolve(String.format("%02x", i)));
+            }
+            deleteStaleTempFiles();
+            opened = true;
+        } finally {
+            if (!opened) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Opens or creates a cache with {@value #INDEX_SLOTS_PROPERTY} index slots, {@value #DEF_INDEX_SLOTS} by default.
+     */
+    public static DiskImageCache open(final File directory, final long maxBytes) {
+        return open(directory, maxBytes, Integer.getInteger(INDEX_SLOTS_PROPERTY, DEF_INDEX_SLOTS));
+    }
+
+    /**
+     * @param maxBytes   total size of the cached files, enforced on each write
+     * @param indexSlots power of two, at most 3/4 of them are used; ignored when the directory already has an index
+     */
+    public static DiskImageCache open(final File directory, final long maxBytes, final int indexSlots) {
+        Validate.notNull(directory, "Directory must not be null");
+        Validate.isTrue(maxBytes > 0, "Cache size must be positive: %d", maxBytes);
+        Validate.isTrue(indexSlots >= 16 && Integer.bitCount(indexSlots) == 1, "Index slots must be a power of two: %d", indexSlots);
+        try {
+            return new DiskImageCache(directory.toPath(), maxBytes, indexSlots);
+        } catch (IOException e) {
+            throw new JTxt2ImgIoRuntimeException("Can't open disk cache in " + directory, e);
+        }
+    }
+
+    /**
+     * @return the encoded image or {@code null}
+     */
+    public byte[] get(final EncodedImageCache.Key key) {
+        Validate.notNull(key, "Key must not be null");
+        validateOpen();
+        byte[] hash = hash(key);
+        int slot = find(hash);
+        if (slot >= 0) {
+            long size = index.getLong(slotOffset(slot) + SIZE_OFFSET);
+            try {
+                byte[] data = Files.readAllBytes(path(hash));
+                // a crash between writing and renaming can leave a short file behind
+                if (data.length == size) {
+                    touch(slot);
+                    hits.incrementAndGet();
+                    Metrics.get().cacheHit(RenderMetrics.Cache.DISK_IMAGE);
+                    return data;
+                }
+                // unindexed files are never evicted, drop it with the entry
+                remove(hash);
+                deleteFile(hash);
+            } catch (NoSuchFileException e) {
+                // evicted by another process or deleted by hand
+                remove(hash);
+            } catch (IOException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Can't read cached image {}", key, e);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        Metrics.get().cacheMiss(RenderMetrics.Cache.DISK_IMAGE);
+        return null;
+    }
+
+    /**
+     * Stores the image unless the key is already cached. Failures are logged and don't propagate,
+     * the image is just not cached.
+     */
+    public void put(final EncodedImageCache.Key key, final byte[] data) {
+        Validate.notNull(key, "Key must not be null");
+        Validate.notNull(data, "Data must not be null");
+        validateOpen();
+        if (data.length == 0 || data.length > maxBytes) {
+            return;
+        }
+        byte[] hash = hash(key);
+        if (find(hash) >= 0) {
+            return;
+        }
+        Path target = path(hash);
+        // unique per process and thread, cheaper than createTempFile
+        Path temp = tempDirectory.resolve(target.getFileName().toString().substring(0, 16) + '-' + instanceId
+                + '-' + Thread.currentThread().getId() + ".tmp");
+        try {
+            try {
+                Files.write(temp, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                try {
+                    move(temp, target);
+                } catch (NoSuchFileException e) {
+                    // the subdirectory was deleted by hand
+                    Files.createDirectories(target.getParent());
+                    move(temp, target);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            synchronized (lock) {
+                FileLock fileLock = channel.lock();
+                try {
+                    insert(hash, data.length, System.currentTimeMillis());
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Can't cache image {} in {}", key, directory, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes every cached image.
+     */
+    public void clear() {
+        validateOpen();
+        synchronized (lock) {
+            try {
+                FileLock fileLock = channel.lock();
+                try {
+                    for (int i = 0; i < slots; i++) {
+                        int offset = slotOffset(i);
+                        if (index.getLong(offset + SIZE_OFFSET) != 0) {
+                            deleteFile(readHash(offset));
+                        }
+                    }
+                    initialize();
+                } finally {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                throw new JTxt2ImgIoRuntimeException("Can't clear disk cache in " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the index file, the mapping is released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    public int size() {
+        return index.getInt(COUNT_OFFSET);
+    }
+
+    public long getTotalBytes() {
+        return index.getLong(BYTES_OFFSET);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getIndexSlots() {
+        return slots;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DiskImageCache: %s size = %s bytes = %s/%s hits = %s misses = %s evictions = %s",
+                directory, size(), getTotalBytes(), maxBytes, hits.get(), misses.get(), evictions.get());
+    }
+
+    static byte[] hash(EncodedImageCache.Key key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(CONTENT_VERSION);
+            key.writeTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return SHA_256.get().digest(bytes.toByteArray());
+    }
+
+    private Path path(byte[] hash) {
+        StringBuilder sb = new StringBuilder(HASH_SIZE * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        String name = sb.toString();
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException e) {
+            // another writer won, the content is the same
+        }
+    }
+
+    private void validateOpen() {
+        Validate.validState(!closed, "Disk cache is closed");
+    }
+
+    private static int readSlots(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // read the whole header
+        }
+        int slots = header.getInt(SLOTS_OFFSET);
+        boolean valid = header.getInt(MAGIC_OFFSET) == MAGIC && header.getInt(VERSION_OFFSET) == INDEX_VERSION
+                && slots > 0 && Integer.bitCount(slots) == 1 && channel.size() == HEADER_SIZE + (long) slots * SLOT_SIZE;
+        return valid ? slots : -1;
+    }
+
+    private void initialize() {
+        for (int offset = 0; offset < index.capacity(); offset += 8) {
+            index.putLong(offset, 0L);
+        }
+        index.putInt(MAGIC_OFFSET, MAGIC);
+        index.putInt(VERSION_OFFSET, INDEX_VERSION);
+        index.putInt(SLOTS_OFFSET, slots);
+    }
+
+    /**
+     * Recreates a missing or broken index from the files in the directory.
+     */
+    private void rebuild() throws IOException {
+        initialize();
+        try (DirectoryStream<Path> subdirectories = Files.newDirectoryStream(directory)) {
+            for (Path subdirectory : subdirectories) {
+                if (!Files.isDirectory(subdirectory) || subdirectory.getFileName().toString().length() != 2) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(subdirectory)) {
+                    for (Path file : files) {
+                        byte[] hash = parseHash(file.getFileName().toString());
+                        if (hash != null) {
+                            insert(hash, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                        }
+                    }
+                }
+            }
+        }
+        if (size() > 0 && LOG.isInfoEnabled()) {
+            LOG.info("Rebuilt disk cache index of {} with {} images", directory, size());
+        }
+    }
+
+    private static byte[] parseHash(String name) {
+        if (name.length() != HASH_SIZE * 2) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int high = Character.digit(name.charAt(2 * i), 16);
+            int low = Character.digit(name.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            hash[i] = (byte) (high << 4 | low);
+        }
+        return hash;
+    }
+
+    private void deleteStaleTempFiles() throws IOException {
+        long staleBefore = System.currentTimeMillis() - TEMP_FILE_AGE_MILLIS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDirectory)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < staleBefore) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int home(byte[] hash) {
+        return ByteBuffer.wrap(hash).getInt() & (slots - 1);
+    }
+
+    private int find(byte[] hash) {
+        ByteBuffer expected = ByteBuffer.wrap(hash);
+        int mask = slots - 1;
+        for (int i = home(hash), probes = 0; probes < slots; i = (i + 1) & mask, probes++) {
+            int offset = slotOffset(i);
+            if (index.getLong(offset + SIZE_OFFSET) == 0) {
+                return -1;
+            }
+            if (index.getLong(offset) == expected.getLong(0) && index.getLong(offset + 8) == expected.getLong(8)
+                    && index.getLong(offset + 16) == expected.getLong(16) && index.getLong(offset + 24) == expected.getLong(24)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] readHash(int offset) {
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            hash[i] = index.get(offset + i);
+        }
+        return hash;
+    }
+
+    private void touch(int slot) {
+        // racy on purpose, a lost update only blurs the LRU order
+        long now = System.currentTimeMillis();
+        int offset = slotOffset(slot) + ACCESS_OFFSET;
+        if (now - index.getLong(offset) > ACCESS_RESOLUTION_MILLIS) {
+            index.putLong(offset, now);
+        }
+    }
+
+    /**
+     * Must hold the locks.
+     */
+    private void insert(byte[] hash, long size, long access) {
+        int slot = find(hash);
+        if (slot >= 0) {
+            int offset = slotOffset(slot);
+            index.putLong(BYTES_OFFSET, getTotalBytes() - index.getLong(offset + SIZE_OFFSET) + size);
+            index.putLong(offset + SIZE_OFFSET, size);
+            index.putLong(offset + ACCESS_OFFSET, access);
+        } else {
+            int maxCount = (int) (slots * MAX_LOAD);
+            if (size() >= maxCount) {
+                evict(maxBytes, (int) (maxCount * LOW_WATER));
+            }
+            int mask = slots - 1;
+            int i = home(hash);
+            while (index.getLong(slotOffset(i) + SIZE_OFFSET) != 0) {
+                i = (i + 1) & mask;
+            }
+            int offset = slotOffset(i);
+            for (int b = 0; b < HASH_SIZE; b++) {
+                index.put(offset + b, hash[b]);
+            }
+            index.putLong(offset + ACCESS_OFFSET, access);
+            // the size publishes the slot to lookups
+            index.putLong(offset + SIZE_OFFSET, size);
+            index.putInt(COUNT_OFFSET, size() + 1);
+            index.putLong(BYTES_OFFSET, getTotalBytes() + size);
+        }
+        if (getTotalBytes() > maxBytes) {
+            evict((long) (maxBytes * LOW_WATER), Integer.MAX_VALUE);
+        }
+    }
+
+    private void remove(byte[] hash) {
+        if (closed) {
+            return;
+        }
+        synchronized (lock) {
+            try {
+                FileLock fileLock = channel.lock();
+                try {
+                    int slot = find(hash);
+                    if (slot >= 0) {
+                        removeSlot(slot);
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Can't update disk cache index in {}", directory, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the slot and shifts the following entries of the probe sequence back, must hold the locks.
+     */
+    private void removeSlot(int slot) {
+        int offset = slotOffset(slot);
+        index.putInt(COUNT_OFFSET, size() - 1);
+        index.putLong(BYTES_OFFSET, getTotalBytes() - index.getLong(offset + SIZE_OFFSET));
+        index.putLong(offset + SIZE_OFFSET, 0L);
+
+        int mask = slots - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; index.getLong(slotOffset(i) + SIZE_OFFSET) != 0; i = (i + 1) & mask) {
+            int home = home(readHash(slotOffset(i)));
+            boolean reachable = hole <= i ? home > hole && home <= i : home > hole || home <= i;
+            if (!reachable) {
+                int from = slotOffset(i);
+                int to = slotOffset(hole);
+                for (int b = 0; b < SLOT_SIZE; b += 8) {
+                    if (b != SIZE_OFFSET) {
+                        index.putLong(to + b, index.getLong(from + b));
+                    }
+                }
+                index.putLong(to + SIZE_OFFSET, index.getLong(from + SIZE_OFFSET));
+                index.putLong(from + SIZE_OFFSET, 0L);
+                hole = i;
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used images until both targets are met, must hold the locks.
+     */
+    private void evict(long targetBytes, int targetCount) {
+        List<Victim> entries = new ArrayList<>(size());
+        for (int i = 0; i < slots; i++) {
+            int offset = slotOffset(i);
+            long size = index.getLong(offset + SIZE_OFFSET);
+            if (size != 0) {
+                entries.add(new Victim(readHash(offset), index.getLong(offset + ACCESS_OFFSET)));
+            }
+        }
+        Collections.sort(entries, new Comparator<Victim>() {
+            @Override
+            public int compare(Victim o1, Victim o2) {
+                return o1.access < o2.access ? -1 : o1.access == o2.access ? 0 : 1;
+            }
+        });
+        for (Victim victim : entries) {
+            if (getTotalBytes() <= targetBytes && size() <= targetCount) {
+                break;
+            }
+            int slot = find(victim.hash);
+            if (slot >= 0) {
+                removeSlot(slot);
+                deleteFile(victim.hash);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void deleteFile(byte[] hash) {
+        try {
+            Files.deleteIfExists(path(hash));
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Can't delete cached image {}", path(hash), e);
+            }
+        }
+    }
+
+    private static final class Victim {
+        private final byte[] hash;
+        private final long access;
+
+        Victim(byte[] hash, long access) {
+            this.hash = hash;
+            this.access = access;
+        }
+    }
+}
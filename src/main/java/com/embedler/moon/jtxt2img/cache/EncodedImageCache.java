@@ -0,0 +1,357 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.cache;
+
+import com.embedler.moon.jtxt2img.BackgroundTemplate;
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.FontRegistry;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.ImgTextPropertiesAccessor;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextWrap;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.awt.font.TextAttribute;
+import java.awt.font.TransformAttribute;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of encoded images bounded by the total number of cached bytes.
+ * Eviction follows the GreedyDual-Size-Frequency policy: an entry's priority grows with
+ * its access frequency and the time it took to produce, and shrinks with its size, so
+ * big images that are cheap to render are evicted before small expensive ones.
+ */
+public final class EncodedImageCache {
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> queue = new TreeSet<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final long maxBytes;
+
+    private long totalBytes;
+    private double inflation;
+    private long sequence;
+
+    public EncodedImageCache(final long maxBytes) {
+        Validate.isTrue(maxBytes > 0, "Cache size must be positive: %d", maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] get(final Key key) {
+        Validate.notNull(key, "Key must not be null");
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                queue.remove(entry);
+                entry.frequency++;
+                entry.priority = priority(entry);
+                entry.sequence = sequence++;
+                queue.add(entry);
+                hits.incrementAndGet();
+                Metrics.get().cacheHit(RenderMetrics.Cache.ENCODED_IMAGE);
+                return entry.data;
+            }
+        }
+        misses.incrementAndGet();
+        Metrics.get().cacheMiss(RenderMetrics.Cache.ENCODED_IMAGE);
+        return null;
+    }
+
+    /**
+     * Streams the cached bytes for the key to the output stream.
+     *
+     * @return {@code true} on a cache hit, {@code false} if nothing was written
+     */
+    public boolean writeTo(final Key key, final OutputStream outputStream) throws IOException {
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        byte[] data = get(key);
+        if (data == null) {
+            return false;
+        }
+        outputStream.write(data);
+        return true;
+    }
+
+    /**
+     * @param data      encoded image bytes, must not be modified afterwards
+     * @param costNanos time it took to render and encode the image
+     */
+    public void put(final Key key, final byte[] data, final long costNanos) {
+        Validate.notNull(key, "Key must not be null");
+        Validate.notNull(data, "Data must not be null");
+        if (data.length > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                queue.remove(entry);
+                totalBytes -= entry.data.length;
+            }
+            while (totalBytes + data.length > maxBytes && !queue.isEmpty()) {
+                Entry victim = queue.pollFirst();
+                entries.remove(victim.key);
+                totalBytes -= victim.data.length;
+                inflation = victim.priority;
+                evictions.incrementAndGet();
+            }
+
+            entry = new Entry(key, data, Math.max(1L, costNanos));
+            entry.frequency = 1;
+            entry.priority = priority(entry);
+            entry.sequence = sequence++;
+            entries.put(key, entry);
+            queue.add(entry);
+            totalBytes += data.length;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        queue.clear();
+        totalBytes = 0;
+        inflation = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EncodedImageCache: size = %s bytes = %s/%s hits = %s misses = %s evictions = %s",
+                size(), getTotalBytes(), maxBytes, hits.get(), misses.get(), evictions.get());
+    }
+
+    private double priority(Entry entry) {
+        return inflation + (double) entry.frequency * entry.cost / Math.max(1, entry.data.length);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final Key key;
+        private final byte[] data;
+        private final long cost;
+        private long frequency;
+        private double priority;
+        private long sequence;
+
+        Entry(Key key, byte[] data, long cost) {
+            this.key = key;
+            this.data = data;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int result = Double.compare(priority, o.priority);
+            return result != 0 ? result : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    /**
+     * Cache key built from the values resolved by {@link RenderSpec},
+     * so equivalent properties (e.g. colors "fff" and "ffffff") share an entry.
+     */
+    public static final class Key {
+
+        private final String text;
+        private final int width;
+        private final int height;
+        private final int bgColor;
+        private final int fgColor;
+        private final ImgTextProperties.IMG_FORMAT format;
+        private final FontRegistry.FontKey font;
+        private final EncodeOptions encodeOptions;
+        private final TextWrap textWrap;
+        private final BackgroundTemplate backgroundTemplate;
+        private final String templateVersion;
+        private final int hash;
+
+        private Key(String text, int width, int height, int bgColor, int fgColor, ImgTextProperties.IMG_FORMAT format, Font font,
+                    EncodeOptions encodeOptions, TextWrap textWrap, BackgroundTemplate backgroundTemplate) {
+            this.text = text;
+            this.width = width;
+            this.height = height;
+            this.bgColor = bgColor;
+            this.fgColor = fgColor;
+            this.format = format;
+            this.font = new FontRegistry.FontKey(font);
+            this.encodeOptions = encodeOptions;
+            this.textWrap = textWrap;
+            this.backgroundTemplate = backgroundTemplate;
+            this.templateVersion = backgroundTemplate != null ? backgroundTemplate.getVersion() : null;
+
+            int result = text.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + bgColor;
+            result = 31 * result + fgColor;
+            result = 31 * result + format.hashCode();
+            result = 31 * result + this.font.hashCode();
+            result = 31 * result + encodeOptions.hashCode();
+            result = 31 * result + textWrap.hashCode();
+            result = 31 * result + (backgroundTemplate != null ? backgroundTemplate.hashCode() : 0);
+            result = 31 * result + (templateVersion != null ? templateVersion.hashCode() : 0);
+            this.hash = result;
+        }
+
+        public static Key of(final ImgTextPropertiesAccessor accessor) {
+            return of(RenderSpec.of(accessor));
+        }
+
+        /**
+         * The raster storage doesn't change the encoded bytes and is not part of the key.
+         */
+        public static Key of(final RenderSpec renderSpec) {
+            Validate.notNull(renderSpec, "Render spec must not be null");
+            return new Key(renderSpec.getText(), renderSpec.getWidth(), renderSpec.getHeight(),
+                    renderSpec.getBackgroundColor(), renderSpec.getForegroundColor(),
+                    renderSpec.getFormat(), renderSpec.getFont(), renderSpec.getEncodeOptions(), renderSpec.getTextWrap(),
+                    renderSpec.getBackgroundTemplate());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    width == key.width &&
+                    height == key.height &&
+                    bgColor == key.bgColor &&
+                    fgColor == key.fgColor &&
+                    format == key.format &&
+                    textWrap == key.textWrap &&
+                    (backgroundTemplate != null ? backgroundTemplate.equals(key.backgroundTemplate) : key.backgroundTemplate == null) &&
+                    (templateVersion != null ? templateVersion.equals(key.templateVersion) : key.templateVersion == null) &&
+                    text.equals(key.text) &&
+                    font.equals(key.font) &&
+                    encodeOptions.equals(key.encodeOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * SHA-256 of {@link #writeTo(DataOutput)}, names the {@link DiskImageCache} file. Stable across restarts and
+         * servers unless a registered font or template file changes, so it can also derive HTTP validators.
+         */
+        public byte[] contentHash() {
+            return DiskImageCache.hash(this);
+        }
+
+        /**
+         * Writes every field unambiguously, the input of {@link DiskImageCache}'s content hash. Templates add
+         * their {@link BackgroundTemplate#getVersion() version} and fonts their attributes and
+         * {@link FontRegistry#identity(Font) registry identity}, so replaced files don't hit stale renders.
+         */
+        void writeTo(DataOutput output) throws IOException {
+            writeString(output, text);
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeInt(bgColor);
+            output.writeInt(fgColor);
+            writeString(output, format.name());
+            writeFont(output, font);
+            writeString(output, encodeOptions.toString());
+            writeString(output, textWrap.name());
+            writeString(output, backgroundTemplate != null ? backgroundTemplate.toString() : "");
+            if (templateVersion != null) {
+                writeString(output, templateVersion);
+            }
+        }
+
+        private static void writeFont(DataOutput output, FontRegistry.FontKey fontKey) throws IOException {
+            Font font = fontKey.getFont();
+            writeString(output, font.getFontName());
+            output.writeInt(font.getStyle());
+            output.writeFloat(font.getSize2D());
+            Map<String, String> attributes = new TreeMap<>();
+            for (Map.Entry<TextAttribute, ?> attribute : font.getAttributes().entrySet()) {
+                Object value = attribute.getValue();
+                if (value instanceof TransformAttribute) {
+                    value = ((TransformAttribute) value).getTransform();
+                }
+                if (value != null) {
+                    attributes.put(attribute.getKey().toString(), value.toString());
+                }
+            }
+            output.writeInt(attributes.size());
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writeString(output, attribute.getKey());
+                writeString(output, attribute.getValue());
+            }
+            writeString(output, fontKey.getIdentity() != null ? fontKey.getIdentity() : "");
+        }
+
+        private static void writeString(DataOutput output, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%dx%d/%06x/%06x/%s/%s-%d%s%s.%s", width, height, bgColor, fgColor,
+                    text, font.getFont().getFontName(), font.getFont().getStyle(), textWrap.isWrapped() ? "-wrap-" + textWrap.name().toLowerCase() : "",
+                    backgroundTemplate != null ? "@" + backgroundTemplate : "", format.name().toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.cache;
+
+import com.embedler.moon.jtxt2img.FontRegistry;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded LRU cache of resolved {@link ImageProcessor.ImageTextSettings}
+ * keyed by font, its {@link FontRegistry#identity(Font) registry identity}, text, target box and whether the text
+ * is wrapped. A capacity of zero disables the cache.
+ */
+public final class FontMetricsCache {
+
+    public static final String CAPACITY_PROPERTY = "jtxt2img.fontMetricsCache.capacity";
+    public static final int DEF_CAPACITY = 1024;
+
+    private static final FontMetricsCache SHARED = new FontMetricsCache(Integer.getInteger(CAPACITY_PROPERTY, DEF_CAPACITY));
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final LinkedHashMap<Key, ImageProcessor.ImageTextSettings> entries;
+    private volatile int capacity;
+
+    public FontMetricsCache(final int capacity) {
+        Validate.isTrue(capacity >= 0, "Capacity must not be negative: %d", capacity);
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, ImageProcessor.ImageTextSettings>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ImageProcessor.ImageTextSettings> eldest) {
+                boolean evict = size() > FontMetricsCache.this.capacity;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    public static FontMetricsCache shared() {
+        return SHARED;
+    }
+
+    public ImageProcessor.ImageTextSettings get(final Font font, final String text, final int width, final int height) {
+        return get(font, text, width, height, false);
+    }
+
+    public ImageProcessor.ImageTextSettings get(final Font font, final String text, final int width, final int height, final boolean wrapped) {
+        if (capacity == 0) {
+            return null;
+        }
+        ImageProcessor.ImageTextSettings settings;
+        synchronized (entries) {
+            settings = entries.get(new Key(font, text, width, height, wrapped));
+        }
+        if (settings != null) {
+            hits.incrementAndGet();
+            Metrics.get().cacheHit(RenderMetrics.Cache.FONT_METRICS);
+        } else {
+            misses.incrementAndGet();
+            Metrics.get().cacheMiss(RenderMetrics.Cache.FONT_METRICS);
+        }
+        return settings;
+    }
+
+    public void put(final Font font, final String text, final int width, final int height, final ImageProcessor.ImageTextSettings settings) {
+        put(font, text, width, height, false, settings);
+    }
+
+    public void put(final Font font, final String text, final int width, final int height, final boolean wrapped,
+                    final ImageProcessor.ImageTextSettings settings) {
+        Validate.notNull(settings, "Settings must not be null");
+        if (capacity == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(font, text, width, height, wrapped), settings);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(final int capacity) {
+        Validate.isTrue(capacity >= 0, "Capacity must not be negative: %d", capacity);
+        synchronized (entries) {
+            this.capacity = capacity;
+            while (entries.size() > capacity) {
+                entries.remove(entries.keySet().iterator().next());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FontMetricsCache: size = %s capacity = %s hits = %s misses = %s evictions = %s",
+                size(), capacity, hits.get(), misses.get(), evictions.get());
+    }
+
+    private static final class Key {
+
+        private final FontRegistry.FontKey font;
+        private final String text;
+        private final int width;
+        private final int height;
+        private final boolean wrapped;
+        private final int hash;
+
+        Key(Font font, String text, int width, int height, boolean wrapped) {
+            this.font = new FontRegistry.FontKey(font);
+            this.text = text;
+            this.width = width;
+            this.height = height;
+            this.wrapped = wrapped;
+
+            int result = this.font.hashCode();
+            result = 31 * result + text.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + (wrapped ? 1 : 0);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    width == key.width &&
+                    height == key.height &&
+                    wrapped == key.wrapped &&
+                    font.equals(key.font) &&
+                    text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
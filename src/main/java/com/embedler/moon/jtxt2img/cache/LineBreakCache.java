@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.cache;
+
+import com.embedler.moon.jtxt2img.TextWrapper;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded LRU cache of {@link TextWrapper.Lines} keyed by font name, style and size,
+ * text and wrap width. A capacity of zero disables the cache.
+ */
+public final class LineBreakCache {
+
+    public static final String CAPACITY_PROPERTY = "jtxt2img.lineBreakCache.capacity";
+    public static final int DEF_CAPACITY = 1024;
+
+    private static final LineBreakCache SHARED = new LineBreakCache(Integer.getInteger(CAPACITY_PROPERTY, DEF_CAPACITY));
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final LinkedHashMap<Key, TextWrapper.Lines> entries;
+    private volatile int capacity;
+
+    public LineBreakCache(final int capacity) {
+        Validate.isTrue(capacity >= 0, "Capacity must not be negative: %d", capacity);
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, TextWrapper.Lines>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TextWrapper.Lines> eldest) {
+                boolean evict = size() > LineBreakCache.this.capacity;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    public static LineBreakCache shared() {
+        return SHARED;
+    }
+
+    public TextWrapper.Lines get(final Font font, final String text, final int wrapWidth) {
+        if (capacity == 0) {
+            return null;
+        }
+        TextWrapper.Lines lines;
+        synchronized (entries) {
+            lines = entries.get(new Key(font, text, wrapWidth));
+        }
+        if (lines != null) {
+            hits.incrementAndGet();
+            Metrics.get().cacheHit(RenderMetrics.Cache.LINE_BREAKS);
+        } else {
+            misses.incrementAndGet();
+            Metrics.get().cacheMiss(RenderMetrics.Cache.LINE_BREAKS);
+        }
+        return lines;
+    }
+
+    public void put(final Font font, final String text, final int wrapWidth, final TextWrapper.Lines lines) {
+        Validate.notNull(lines, "Lines must not be null");
+        if (capacity == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(font, text, wrapWidth), lines);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(final int capacity) {
+        Validate.isTrue(capacity >= 0, "Capacity must not be negative: %d", capacity);
+        synchronized (entries) {
+            this.capacity = capacity;
+            while (entries.size() > capacity) {
+                entries.remove(entries.keySet().iterator().next());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LineBreakCache: size = %s capacity = %s hits = %s misses = %s evictions = %s",
+                size(), capacity, hits.get(), misses.get(), evictions.get());
+    }
+
+    private static final class Key {
+
+        private final String fontName;
+        private final int fontStyle;
+        private final int fontSize;
+        private final String text;
+        private final int wrapWidth;
+        private final int hash;
+
+        Key(Font font, String text, int wrapWidth) {
+            this.fontName = font.getFontName();
+            this.fontStyle = font.getStyle();
+            this.fontSize = font.getSize();
+            this.text = text;
+            this.wrapWidth = wrapWidth;
+
+            int result = fontName.hashCode();
+            result = 31 * result + fontStyle;
+            result = 31 * result + fontSize;
+            result = 31 * result + text.hashCode();
+            result = 31 * result + wrapWidth;
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    fontStyle == key.fontStyle &&
+                    fontSize == key.fontSize &&
+                    wrapWidth == key.wrapWidth &&
+                    fontName.equals(key.fontName) &&
+                    text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.cache;
+
+import com.embedler.moon.jtxt2img.BackgroundTemplate;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe LRU cache of decoded and scaled {@link BackgroundTemplate} rasters keyed by template, its
+ * {@link BackgroundTemplate#getVersion() version} and size, bounded by the total number of raster bytes.
+ * Replaced templates are rendered again, the stale rasters age out. Cached images are shared and must only be read, renders copy them.
+ */
+public final class TemplateCache {
+
+    public static final String MAX_BYTES_PROPERTY = "jtxt2img.templateCache.maxBytes";
+    public static final long DEF_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final TemplateCache SHARED = new TemplateCache(Long.getLong(MAX_BYTES_PROPERTY, DEF_MAX_BYTES));
+
+    private final LinkedHashMap<Key, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final long maxBytes;
+    private long totalBytes;
+
+    public TemplateCache(final long maxBytes) {
+        Validate.isTrue(maxBytes >= 0, "Cache size must not be negative: %d", maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public static TemplateCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the cached raster or renders and caches it. Concurrent misses for the same key may
+     * render twice, the last one wins.
+     */
+    public BufferedImage get(final BackgroundTemplate template, final int width, final int height) {
+        Validate.notNull(template, "Template must not be null");
+        Key key = new Key(template, width, height);
+        BufferedImage image;
+        synchronized (entries) {
+            image = entries.get(key);
+        }
+        if (image != null) {
+            hits.incrementAndGet();
+            Metrics.get().cacheHit(RenderMetrics.Cache.TEMPLATE);
+            return image;
+        }
+        misses.incrementAndGet();
+        Metrics.get().cacheMiss(RenderMetrics.Cache.TEMPLATE);
+
+        image = template.render(width, height);
+        long bytes = sizeOf(image);
+        if (bytes <= maxBytes) {
+            synchronized (entries) {
+                BufferedImage previous = entries.put(key, image);
+                if (previous != null) {
+                    totalBytes -= sizeOf(previous);
+                }
+                totalBytes += bytes;
+                Iterator<BufferedImage> eldest = entries.values().iterator();
+                while (totalBytes > maxBytes && eldest.hasNext()) {
+                    totalBytes -= sizeOf(eldest.next());
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        return image;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TemplateCache: size = %s bytes = %s/%s hits = %s misses = %s evictions = %s",
+                size(), getTotalBytes(), maxBytes, hits.get(), misses.get(), evictions.get());
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private static final class Key {
+
+        private final BackgroundTemplate template;
+        private final String version;
+        private final int width;
+        private final int height;
+        private final int hash;
+
+        Key(BackgroundTemplate template, int width, int height) {
+            this.template = template;
+            this.version = template.getVersion();
+            this.width = width;
+            this.height = height;
+            this.hash = 31 * (31 * (31 * template.hashCode() + version.hashCode()) + width) + height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    width == key.width &&
+                    height == key.height &&
+                    template.equals(key.template) &&
+                    version.equals(key.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
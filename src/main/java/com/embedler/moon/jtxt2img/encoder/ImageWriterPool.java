@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps idle {@link ImageWriter}s per format so encoding skips the plugin registry lookup
+ * and writer construction of {@link ImageIO#write}. Writers are {@code reset()} before they are
+ * returned, so the pool can be shared between threads.
+ */
+public final class ImageWriterPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageWriterPool.class);
+
+    public static final String MAX_IDLE_PROPERTY = "jtxt2img.imageWriterPool.maxIdle";
+
+    private static final ImageWriterPool SHARED = new ImageWriterPool(
+            Integer.getInteger(MAX_IDLE_PROPERTY, Runtime.getRuntime().availableProcessors() * 2));
+
+    private final Map<ImgTextProperties.IMG_FORMAT, Pool> pools = new EnumMap<>(ImgTextProperties.IMG_FORMAT.class);
+    private final int maxIdle;
+
+    public ImageWriterPool(final int maxIdle) {
+        Validate.isTrue(maxIdle >= 0, "Max idle writers must not be negative: %d", maxIdle);
+        this.maxIdle = maxIdle;
+        for (ImgTextProperties.IMG_FORMAT format : ImgTextProperties.IMG_FORMAT.values()) {
+            if (format != ImgTextProperties.IMG_FORMAT.AUTO) {
+                pools.put(format, new Pool(format));
+            }
+        }
+    }
+
+    public static ImageWriterPool shared() {
+        return SHARED;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getIdleCount(final ImgTextProperties.IMG_FORMAT format) {
+        return pools.get(format).idleCount.get();
+    }
+
+    /**
+     * Encodes the image to the output stream, which is flushed but not closed.
+     *
+     * @return {@code false} if there is no writer for the format
+     */
+    public boolean write(final BufferedImage image, final ImgTextProperties.IMG_FORMAT format, final OutputStream outputStream,
+                         final EncodeOptions encodeOptions) throws IOException {
+        Validate.notNull(image, "Image must not be null");
+        Validate.notNull(format, "Format must not be null");
+        Validate.isTrue(format != ImgTextProperties.IMG_FORMAT.AUTO, "Format must be resolved to PNG, JPG or GIF");
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        Validate.notNull(encodeOptions, "Encode options must not be null");
+
+        Pool pool = pools.get(format);
+        ImageWriter writer = pool.borrow();
+        if (writer == null) {
+            return false;
+        }
+
+        boolean reusable = false;
+        ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream);
+        try {
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), createWriteParam(writer, format, encodeOptions));
+            imageOutputStream.flush();
+            reusable = true;
+        } finally {
+            try {
+                imageOutputStream.close();
+            } finally {
+                if (reusable) {
+                    pool.release(writer);
+                } else {
+                    writer.dispose();
+                }
+            }
+        }
+        return true;
+    }
+
+    static ImageWriteParam createWriteParam(ImageWriter writer, ImgTextProperties.IMG_FORMAT format, EncodeOptions encodeOptions) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteProgressive()) {
+            param.setProgressiveMode(encodeOptions.isProgressive() ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+        }
+        if (param.canWriteCompressed()) {
+            switch (format) {
+                case JPG:
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(encodeOptions.getJpegQuality());
+                    break;
+                case PNG:
+                    // the PNG writer uses (int) (9 * (1 - quality)) as deflate level, aim at the middle of the
+                    // level's range so the truncation can't round it down
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(Math.max(0f, Math.min(1f, 1f - (encodeOptions.getPngCompressionLevel() + 0.5f) / 9f)));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return param;
+    }
+
+    private final class Pool {
+        private final ImgTextProperties.IMG_FORMAT format;
+        private final ConcurrentLinkedQueue<ImageWriter> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private volatile ImageWriterSpi provider;
+
+        Pool(ImgTextProperties.IMG_FORMAT format) {
+            this.format = format;
+        }
+
+        ImageWriter borrow() {
+            ImageWriter writer = idle.poll();
+            if (writer != null) {
+                idleCount.decrementAndGet();
+                return writer;
+            }
+            ImageWriterSpi spi = provider;
+            if (spi == null) {
+                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.name().toLowerCase());
+                if (!writers.hasNext()) {
+                    return null;
+                }
+                writer = writers.next();
+                spi = writer.getOriginatingProvider();
+                provider = spi;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Using {} for {}", spi, format);
+                }
+                return writer;
+            }
+            try {
+                return spi.createWriterInstance();
+            } catch (IOException e) {
+                throw new JTxt2ImgIoRuntimeException("Can't create image writer for " + format, e);
+            }
+        }
+
+        void release(ImageWriter writer) {
+            writer.reset();
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idle.offer(writer);
+            } else {
+                idleCount.decrementAndGet();
+                writer.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * GIF encoder for packed palette images such as the two color {@code TYPE_BYTE_BINARY} images
+ * built by {@code ImageProcessor}. Pixels are LZW compressed straight from the packed rows with
+ * code tables owned by the encoder, so nothing is allocated per image. Instances are not
+ * thread-safe, use {@link #get()} to obtain the one bound to the current thread.
+ */
+public final class IndexedGifEncoder {
+
+    private static final byte[] HEADER = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final int MAX_BITS = 12;
+    private static final int MAX_MAX_CODE = 1 << MAX_BITS;
+    private static final int HASH_SIZE = 5003;
+    private static final int HASH_SHIFT = 4;
+
+    private static final ThreadLocal<IndexedGifEncoder> ENCODERS = new ThreadLocal<IndexedGifEncoder>() {
+        @Override
+        protected IndexedGifEncoder initialValue() {
+            return new IndexedGifEncoder();
+        }
+    };
+
+    private final int[] hashTable = new int[HASH_SIZE];
+    private final int[] codeTable = new int[HASH_SIZE];
+    private final byte[] block = new byte[256];
+    private OutputStream out;
+
+    private int initBits;
+    private int clearCode;
+    private int endCode;
+    private int bits;
+    private int maxCode;
+    private int freeEntry;
+    private boolean clearFlag;
+    private int accumulator;
+    private int accumulatorBits;
+    private int blockLength;
+    private int prefix;
+    private boolean started;
+
+    public static IndexedGifEncoder get() {
+        return ENCODERS.get();
+    }
+
+    public static boolean canEncode(final BufferedImage image) {
+        return PackedRows.isSupported(image);
+    }
+
+    public void encode(final BufferedImage image, final OutputStream outputStream) throws IOException {
+        Validate.isTrue(canEncode(image), "Image must be a packed palette image");
+        RowEncoder rowEncoder = begin(image.getWidth(), image.getHeight(), (IndexColorModel) image.getColorModel(),
+                new PackedRows(image).getBitsPerPixel(), outputStream);
+        try {
+            rowEncoder.writeRows(image, image.getHeight());
+            rowEncoder.finish();
+        } finally {
+            rowEncoder.abort();
+        }
+    }
+
+    /**
+     * Writes the header and color table and returns the sink for the rows.
+     *
+     * @param bitsPerPixel 1, 2, 4 or 8
+     */
+    public RowEncoder begin(final int width, final int height, final IndexColorModel colorModel, final int bitsPerPixel,
+                            final OutputStream outputStream) throws IOException {
+        Validate.isTrue(width > 0 && height > 0 && width <= 0xffff && height <= 0xffff, "Invalid image size: %dx%d", width, height);
+        Validate.notNull(colorModel, "Color model must not be null");
+        Validate.isTrue(bitsPerPixel == 1 || bitsPerPixel == 2 || bitsPerPixel == 4 || bitsPerPixel == 8, "Invalid bit depth: %d", bitsPerPixel);
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        Validate.validState(out == null, "Encoder is already in use");
+
+        out = outputStream;
+        try {
+            out.write(HEADER);
+            writeScreenDescriptor(width, height, bitsPerPixel, colorModel);
+            writeImageDescriptor(width, height);
+
+            int minCodeSize = Math.max(2, bitsPerPixel);
+            out.write(minCodeSize);
+            start(minCodeSize);
+        } catch (IOException | RuntimeException | Error e) {
+            out = null;
+            throw e;
+        }
+        return new GifRowEncoder(width, height, bitsPerPixel);
+    }
+
+    private final class GifRowEncoder implements RowEncoder {
+
+        private final int width;
+        private final int height;
+        private final int pixelBits;
+        private int y;
+        private boolean done;
+
+        GifRowEncoder(int width, int height, int pixelBits) {
+            this.width = width;
+            this.height = height;
+            this.pixelBits = pixelBits;
+        }
+
+        @Override
+        public void writeRows(BufferedImage strip, int rows) throws IOException {
+            try {
+                Validate.validState(!done, "Image is already finished");
+                Validate.isTrue(canEncode(strip) && strip.getWidth() == width, "Strip must be a packed palette image %d pixels wide", width);
+                Validate.isTrue(rows >= 0 && rows <= strip.getHeight() && y + rows <= height, "Invalid row count: %d", rows);
+                PackedRows packedRows = new PackedRows(strip);
+                Validate.isTrue(packedRows.getBitsPerPixel() == pixelBits, "Strip must have %d bits per pixel", pixelBits);
+
+                int mask = (1 << pixelBits) - 1;
+                int pixelsPerByte = 8 / pixelBits;
+                for (int row = 0; row < rows; row++) {
+                    byte[] data = packedRows.getRow(row);
+                    int offset = packedRows.getRowOffset(row);
+                    int x = 0;
+                    while (x < width) {
+                        int packed = data[offset++] & 0xff;
+                        int shift = 8 - pixelBits;
+                        for (int i = 0; i < pixelsPerByte && x < width; i++, x++) {
+                            add((packed >>> shift) & mask);
+                            shift -= pixelBits;
+                        }
+                    }
+                }
+                y += rows;
+            } catch (IOException | RuntimeException | Error e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                Validate.validState(!done, "Image is already finished");
+                Validate.validState(y == height, "Only %d of %d rows were written", y, height);
+                IndexedGifEncoder.this.finish();
+                out.write(0);
+                out.write(0x3b);
+            } finally {
+                abort();
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (!done) {
+                done = true;
+                out = null;
+            }
+        }
+    }
+
+    private void writeScreenDescriptor(int width, int height, int pixelBits, IndexColorModel colorModel) throws IOException {
+        int tableBits = Math.max(1, pixelBits);
+        writeShort(width);
+        writeShort(height);
+        out.write(0x80 | ((tableBits - 1) << 4) | (tableBits - 1));
+        out.write(0);
+        out.write(0);
+
+        int size = 1 << tableBits;
+        byte[] table = new byte[size * 3];
+        for (int i = 0; i < Math.min(size, colorModel.getMapSize()); i++) {
+            table[i * 3] = (byte) colorModel.getRed(i);
+            table[i * 3 + 1] = (byte) colorModel.getGreen(i);
+            table[i * 3 + 2] = (byte) colorModel.getBlue(i);
+        }
+        out.write(table);
+    }
+
+    private void writeImageDescriptor(int width, int height) throws IOException {
+        out.write(0x2c);
+        writeShort(0);
+        writeShort(0);
+        writeShort(width);
+        writeShort(height);
+        out.write(0);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private void start(int minCodeSize) throws IOException {
+        initBits = minCodeSize + 1;
+        clearCode = 1 << minCodeSize;
+        endCode = clearCode + 1;
+        bits = initBits;
+        maxCode = (1 << bits) - 1;
+        freeEntry = clearCode + 2;
+        clearFlag = false;
+        accumulator = 0;
+        accumulatorBits = 0;
+        blockLength = 0;
+        started = false;
+
+        Arrays.fill(hashTable, -1);
+        output(clearCode);
+    }
+
+    private void add(int pixel) throws IOException {
+        if (!started) {
+            prefix = pixel;
+            started = true;
+            return;
+        }
+
+        int key = (pixel << MAX_BITS) + prefix;
+        int i = (pixel << HASH_SHIFT) ^ prefix;
+        if (hashTable[i] == key) {
+            prefix = codeTable[i];
+            return;
+        }
+        if (hashTable[i] >= 0) {
+            int displacement = i == 0 ? 1 : HASH_SIZE - i;
+            do {
+                i -= displacement;
+                if (i < 0) {
+                    i += HASH_SIZE;
+                }
+                if (hashTable[i] == key) {
+                    prefix = codeTable[i];
+                    return;
+                }
+            } while (hashTable[i] >= 0);
+        }
+
+        output(prefix);
+        prefix = pixel;
+        if (freeEntry < MAX_MAX_CODE) {
+            codeTable[i] = freeEntry++;
+            hashTable[i] = key;
+        } else {
+            Arrays.fill(hashTable, -1);
+            freeEntry = clearCode + 2;
+            clearFlag = true;
+            output(clearCode);
+        }
+    }
+
+    private void finish() throws IOException {
+        if (started) {
+            output(prefix);
+        }
+        output(endCode);
+        while (accumulatorBits > 0) {
+            writeByte(accumulator & 0xff);
+            accumulator >>>= 8;
+            accumulatorBits -= 8;
+        }
+        accumulatorBits = 0;
+        flushBlock();
+    }
+
+    private void output(int code) throws IOException {
+        accumulator |= code << accumulatorBits;
+        accumulatorBits += bits;
+        while (accumulatorBits >= 8) {
+            writeByte(accumulator & 0xff);
+            accumulator >>>= 8;
+            accumulatorBits -= 8;
+        }
+
+        if (freeEntry > maxCode || clearFlag) {
+            if (clearFlag) {
+                bits = initBits;
+                maxCode = (1 << bits) - 1;
+                clearFlag = false;
+            } else {
+                bits++;
+                maxCode = bits == MAX_BITS ? MAX_MAX_CODE : (1 << bits) - 1;
+            }
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+        block[++blockLength] = (byte) value;
+        if (blockLength == 255) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockLength > 0) {
+            block[0] = (byte) blockLength;
+            out.write(block, 0, blockLength + 1);
+            blockLength = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder for packed palette images such as the {@code TYPE_BYTE_BINARY} images
+ * built by {@code ImageProcessor}. Scanlines are read straight from the raster's data buffer
+ * and streamed through a reusable {@link Deflater}, skipping the generic per-pixel conversion
+ * of the {@code ImageIO} writer. Instances are not thread-safe, use {@link #get()} to obtain
+ * the one bound to the current thread.
+ */
+public final class IndexedPngEncoder {
+
+    public static final int DEF_COMPRESSION_LEVEL = 6;
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] PLTE = {'P', 'L', 'T', 'E'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    private static final byte[] FILTER_NONE = {0};
+    private static final int IDAT_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<IndexedPngEncoder> ENCODERS = new ThreadLocal<IndexedPngEncoder>() {
+        @Override
+        protected IndexedPngEncoder initialValue() {
+            return new IndexedPngEncoder();
+        }
+    };
+
+    private final Deflater deflater = new Deflater(DEF_COMPRESSION_LEVEL);
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk = new byte[IDAT_SIZE];
+    private final byte[] header = new byte[8];
+    private int chunkLength;
+    private OutputStream out;
+
+    public static IndexedPngEncoder get() {
+        return ENCODERS.get();
+    }
+
+    public static boolean canEncode(final BufferedImage image) {
+        return PackedRows.isSupported(image);
+    }
+
+    public void encode(final BufferedImage image, final OutputStream outputStream) throws IOException {
+        encode(image, outputStream, DEF_COMPRESSION_LEVEL);
+    }
+
+    public RowEncoder begin(final int width, final int height, final IndexColorModel colorModel, final int bitsPerPixel,
+                            final OutputStream outputStream) throws IOException {
+        return begin(width, height, colorModel, bitsPerPixel, outputStream, DEF_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * @param level deflate level from 0 (store) to 9 (best compression), or -1 for the zlib default
+     */
+    public void encode(final BufferedImage image, final OutputStream outputStream, final int level) throws IOException {
+        Validate.isTrue(canEncode(image), "Image must be a packed palette image");
+        RowEncoder rowEncoder = begin(image.getWidth(), image.getHeight(), (IndexColorModel) image.getColorModel(),
+                new PackedRows(image).getBitsPerPixel(), outputStream, level);
+        try {
+            rowEncoder.writeRows(image, image.getHeight());
+            rowEncoder.finish();
+        } finally {
+            rowEncoder.abort();
+        }
+    }
+
+    /**
+     * Writes the header and palette and returns the sink for the scanlines.
+     *
+     * @param bitsPerPixel 1, 2, 4 or 8
+     */
+    public RowEncoder begin(final int width, final int height, final IndexColorModel colorModel, final int bitsPerPixel,
+                            final OutputStream outputStream, final int level) throws IOException {
+        Validate.isTrue(width > 0 && height > 0, "Invalid image size: %dx%d", width, height);
+        Validate.notNull(colorModel, "Color model must not be null");
+        Validate.isTrue(bitsPerPixel == 1 || bitsPerPixel == 2 || bitsPerPixel == 4 || bitsPerPixel == 8, "Invalid bit depth: %d", bitsPerPixel);
+        Validate.notNull(outputStream, "OutputStream must not be null");
+        Validate.isTrue(level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION, "Invalid compression level: %d", level);
+        Validate.validState(out == null, "Encoder is already in use");
+
+        out = outputStream;
+        try {
+            out.write(SIGNATURE);
+            writeHeader(width, height, bitsPerPixel);
+            writePalette(colorModel);
+        } catch (IOException | RuntimeException | Error e) {
+            out = null;
+            throw e;
+        }
+        deflater.reset();
+        deflater.setLevel(level);
+        chunkLength = 0;
+        return new PngRowEncoder(width, height, bitsPerPixel);
+    }
+
+    private final class PngRowEncoder implements RowEncoder {
+
+        private final int width;
+        private final int height;
+        private final int bitsPerPixel;
+        private int y;
+        private boolean done;
+
+        PngRowEncoder(int width, int height, int bitsPerPixel) {
+            this.width = width;
+            this.height = height;
+            this.bitsPerPixel = bitsPerPixel;
+        }
+
+        @Override
+        public void writeRows(BufferedImage strip, int rows) throws IOException {
+            try {
+                Validate.validState(!done, "Image is already finished");
+                Validate.isTrue(canEncode(strip) && strip.getWidth() == width, "Strip must be a packed palette image %d pixels wide", width);
+                Validate.isTrue(rows >= 0 && rows <= strip.getHeight() && y + rows <= height, "Invalid row count: %d", rows);
+                PackedRows packedRows = new PackedRows(strip);
+                Validate.isTrue(packedRows.getBitsPerPixel() == bitsPerPixel, "Strip must have %d bits per pixel", bitsPerPixel);
+                for (int row = 0; row < rows; row++) {
+                    deflate(FILTER_NONE, 0, 1);
+                    deflate(packedRows.getRow(row), packedRows.getRowOffset(row), packedRows.getRowLength());
+                }
+                y += rows;
+            } catch (IOException | RuntimeException | Error e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                Validate.validState(!done, "Image is already finished");
+                Validate.validState(y == height, "Only %d of %d rows were written", y, height);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    fillChunk();
+                }
+                if (chunkLength > 0) {
+                    writeChunk(IDAT, chunk, chunkLength);
+                }
+                writeChunk(IEND, chunk, 0);
+            } finally {
+                abort();
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (!done) {
+                done = true;
+                out = null;
+                deflater.reset();
+            }
+        }
+    }
+
+    private void writeHeader(int width, int height, int bitDepth) throws IOException {
+        byte[] data = new byte[13];
+        putInt(data, 0, width);
+        putInt(data, 4, height);
+        data[8] = (byte) bitDepth;
+        data[9] = 3; // indexed color
+        data[10] = 0; // deflate
+        data[11] = 0; // adaptive filtering
+        data[12] = 0; // no interlace
+        writeChunk(IHDR, data, data.length);
+    }
+
+    private void writePalette(IndexColorModel colorModel) throws IOException {
+        int size = colorModel.getMapSize();
+        byte[] data = new byte[size * 3];
+        for (int i = 0; i < size; i++) {
+            data[i * 3] = (byte) colorModel.getRed(i);
+            data[i * 3 + 1] = (byte) colorModel.getGreen(i);
+            data[i * 3 + 2] = (byte) colorModel.getBlue(i);
+        }
+        writeChunk(PLTE, data, data.length);
+    }
+
+    private void deflate(byte[] data, int offset, int length) throws IOException {
+        deflater.setInput(data, offset, length);
+        while (!deflater.needsInput()) {
+            fillChunk();
+        }
+    }
+
+    private void fillChunk() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+        if (chunkLength == chunk.length) {
+            writeChunk(IDAT, chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeChunk(byte[] type, byte[] data, int length) throws IOException {
+        putInt(header, 0, length);
+        System.arraycopy(type, 0, header, 4, 4);
+        out.write(header, 0, 8);
+        out.write(data, 0, length);
+
+        crc.reset();
+        crc.update(type, 0, 4);
+        crc.update(data, 0, length);
+        putInt(header, 0, (int) crc.getValue());
+        out.write(header, 0, 4);
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import com.embedler.moon.jtxt2img.mmap.NioDataBuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+/**
+ * Gives access to the packed scanlines of a palette image with 1, 2, 4 or 8 bits per pixel.
+ * Rows of heap rasters are returned in place; rows of other data buffers are copied into a
+ * single reused row array.
+ */
+final class PackedRows {
+
+    private final int bitsPerPixel;
+    private final int rowLength;
+    private final int scanlineStride;
+    private final int baseOffset;
+    private final byte[] heapData;
+    private final ByteBuffer nioData;
+    private final DataBuffer dataBuffer;
+    private final byte[] row;
+
+    PackedRows(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+
+        this.bitsPerPixel = sampleModel.getPixelBitStride();
+        this.rowLength = (image.getWidth() * bitsPerPixel + 7) / 8;
+        this.scanlineStride = sampleModel.getScanlineStride();
+        this.baseOffset = buffer.getOffset();
+        this.dataBuffer = buffer;
+        if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1) {
+            this.heapData = ((DataBufferByte) buffer).getData();
+            this.nioData = null;
+            this.row = null;
+        } else {
+            this.heapData = null;
+            this.nioData = buffer instanceof NioDataBuffer ? ((NioDataBuffer) buffer).getByteBuffer() : null;
+            this.row = new byte[rowLength];
+        }
+    }
+
+    static boolean isSupported(BufferedImage image) {
+        if (image == null || !(image.getColorModel() instanceof IndexColorModel)) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getDataBuffer().getDataType() != DataBuffer.TYPE_BYTE) {
+            return false;
+        }
+        MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) raster.getSampleModel();
+        int bits = sampleModel.getPixelBitStride();
+        return sampleModel.getDataBitOffset() == 0 && (bits == 1 || bits == 2 || bits == 4 || bits == 8)
+                && ((IndexColorModel) image.getColorModel()).getMapSize() <= (1 << bits);
+    }
+
+    int getBitsPerPixel() {
+        return bitsPerPixel;
+    }
+
+    int getRowLength() {
+        return rowLength;
+    }
+
+    byte[] getRow(int y) {
+        if (heapData != null) {
+            return heapData;
+        }
+        int offset = baseOffset + y * scanlineStride;
+        if (nioData != null) {
+            nioData.position(offset);
+            nioData.get(row, 0, rowLength);
+        } else {
+            for (int i = 0; i < rowLength; i++) {
+                row[i] = (byte) dataBuffer.getElem(offset + i);
+            }
+        }
+        return row;
+    }
+
+    int getRowOffset(int y) {
+        return heapData != null ? baseOffset + y * scanlineStride : 0;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Lossless palette depth reduction. A packed palette image that uses no more palette entries than a shallower
+ * depth can hold, e.g. anti-aliased text too small to produce any shades, is copied into that depth with the
+ * used entries in their original order. Fewer bits per pixel mean shorter scanlines for PNG and shorter codes for GIF.
+ */
+public final class PaletteReducer {
+
+    private PaletteReducer() {
+    }
+
+    /**
+     * @return a heap copy with fewer bits per pixel, or the image itself if it can't be reduced
+     */
+    public static BufferedImage reduce(final BufferedImage image) {
+        Validate.isTrue(PackedRows.isSupported(image), "Image must be a packed palette image");
+        PackedRows packedRows = new PackedRows(image);
+        int bits = packedRows.getBitsPerPixel();
+        if (bits == 1) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // the next shallower depth has half the bits, stop counting once it can't hold the used entries
+        int limit = 1 << (bits >> 1);
+        boolean[] used = new boolean[1 << bits];
+        int usedCount = 0;
+        int mask = (1 << bits) - 1;
+        for (int y = 0; y < height && usedCount <= limit; y++) {
+            byte[] data = packedRows.getRow(y);
+            int offset = packedRows.getRowOffset(y);
+            for (int x = 0; x < width; x++) {
+                int shift = 8 - bits - (x * bits & 7);
+                int index = (data[offset + (x * bits >> 3)] >>> shift) & mask;
+                if (!used[index]) {
+                    used[index] = true;
+                    usedCount++;
+                }
+            }
+        }
+
+        int targetBits = usedCount <= 2 ? 1 : usedCount <= 4 ? 2 : usedCount <= 16 ? 4 : 8;
+        if (targetBits >= bits) {
+            return image;
+        }
+
+        IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+        int targetSize = 1 << targetBits;
+        byte[] rmap = new byte[targetSize];
+        byte[] gmap = new byte[targetSize];
+        byte[] bmap = new byte[targetSize];
+        int[] remap = new int[used.length];
+        int next = 0;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                remap[i] = next;
+                rmap[next] = (byte) colorModel.getRed(i);
+                gmap[next] = (byte) colorModel.getGreen(i);
+                bmap[next] = (byte) colorModel.getBlue(i);
+                next++;
+            }
+        }
+        // unused slots repeat the last color so every index stays valid
+        for (int i = next; i < targetSize; i++) {
+            rmap[i] = rmap[Math.max(0, next - 1)];
+            gmap[i] = gmap[Math.max(0, next - 1)];
+            bmap[i] = bmap[Math.max(0, next - 1)];
+        }
+
+        BufferedImage reduced = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY,
+                new IndexColorModel(targetBits, targetSize, rmap, gmap, bmap));
+        byte[] target = ((DataBufferByte) reduced.getRaster().getDataBuffer()).getData();
+        int targetStride = (width * targetBits + 7) / 8;
+        for (int y = 0; y < height; y++) {
+            byte[] data = packedRows.getRow(y);
+            int offset = packedRows.getRowOffset(y);
+            int targetOffset = y * targetStride;
+            for (int x = 0; x < width; x++) {
+                int shift = 8 - bits - (x * bits & 7);
+                int index = remap[(data[offset + (x * bits >> 3)] >>> shift) & mask];
+                target[targetOffset + (x * targetBits >> 3)] |= index << (8 - targetBits - (x * targetBits & 7));
+            }
+        }
+        return reduced;
+    }
+}
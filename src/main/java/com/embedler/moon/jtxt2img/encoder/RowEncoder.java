@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.encoder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Receives an image strip by strip, from top to bottom, so the whole raster never has to be resident.
+ * Obtained from {@link IndexedPngEncoder#begin} or {@link IndexedGifEncoder#begin} and bound to the calling thread
+ * until {@link #finish()} or {@link #abort()}.
+ */
+public interface RowEncoder {
+
+    /**
+     * Encodes the first {@code rows} rows of the strip, a packed palette image as wide as the encoded image
+     * with the same pixel depth.
+     */
+    void writeRows(BufferedImage strip, int rows) throws IOException;
+
+    /**
+     * Completes the image, all rows must have been written.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Releases the encoder after a failure so the thread can encode again, the output is left incomplete.
+     * Does nothing once the image is finished or aborted.
+     */
+    void abort();
+}
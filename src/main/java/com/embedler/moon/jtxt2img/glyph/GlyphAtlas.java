@@ -0,0 +1,209 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.glyph;
+
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of 1 bit glyph bitmaps per font and glyph code. Glyphs are rasterized once by Java2D
+ * with the same font render context as a {@link BufferedImage#TYPE_BYTE_BINARY} image, so copying them
+ * gives the same pixels as drawing the text.
+ * The shared atlas size is read from the {@value #MAX_BYTES_PROPERTY} system property.
+ */
+public final class GlyphAtlas {
+
+    public static final String MAX_BYTES_PROPERTY = "jtxt2img.glyphAtlas.maxBytes";
+    public static final long DEF_MAX_BYTES = 4 * 1024 * 1024;
+
+    static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, false, false);
+
+    private static final int GLYPH_OVERHEAD = 64;
+    // pixel bounds are an estimate, rasterize with a margin
+    private static final int MARGIN = 2;
+
+    private static final GlyphAtlas SHARED = new GlyphAtlas(Long.getLong(MAX_BYTES_PROPERTY, DEF_MAX_BYTES));
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Glyph> glyphs = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public GlyphAtlas(final long maxBytes) {
+        Validate.isTrue(maxBytes >= 0, "Max bytes must not be negative: %d", maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public static GlyphAtlas shared() {
+        return SHARED;
+    }
+
+    Glyph get(Font font, int glyphCode) {
+        Key key = new Key(font, glyphCode);
+        synchronized (glyphs) {
+            Glyph glyph = glyphs.get(key);
+            if (glyph != null) {
+                hits.incrementAndGet();
+                return glyph;
+            }
+        }
+        misses.incrementAndGet();
+        Glyph glyph = rasterize(font, glyphCode);
+        synchronized (glyphs) {
+            Glyph previous = glyphs.put(key, glyph);
+            bytes += glyph.cost();
+            if (previous != null) {
+                bytes -= previous.cost();
+            }
+            Iterator<Glyph> it = glyphs.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                bytes -= it.next().cost();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return glyph;
+    }
+
+    private static Glyph rasterize(Font font, int glyphCode) {
+        GlyphVector glyphVector = font.createGlyphVector(FONT_RENDER_CONTEXT, new int[]{glyphCode});
+        Rectangle bounds = glyphVector.getGlyphPixelBounds(0, FONT_RENDER_CONTEXT, 0, 0);
+        if (bounds.isEmpty()) {
+            return Glyph.EMPTY;
+        }
+        bounds.grow(MARGIN, MARGIN);
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.drawGlyphVector(glyphVector, -bounds.x, -bounds.y);
+        } finally {
+            g.dispose();
+        }
+        byte[] bits = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        return new Glyph(bounds.x, bounds.y, bounds.width, bounds.height, (bounds.width + 7) >> 3, bits);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getBytes() {
+        synchronized (glyphs) {
+            return bytes;
+        }
+    }
+
+    public int size() {
+        synchronized (glyphs) {
+            return glyphs.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (glyphs) {
+            glyphs.clear();
+            bytes = 0;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GlyphAtlas: size = %d bytes = %d/%d hits = %d misses = %d evictions = %d",
+                size(), getBytes(), maxBytes, getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+    /**
+     * Packed rows of a glyph, most significant bit first, positioned relative to the pen.
+     */
+    static final class Glyph {
+
+        static final Glyph EMPTY = new Glyph(0, 0, 0, 0, 0, new byte[0]);
+
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final int rowBytes;
+        final byte[] bits;
+
+        Glyph(int x, int y, int width, int height, int rowBytes, byte[] bits) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.rowBytes = rowBytes;
+            this.bits = bits;
+        }
+
+        long cost() {
+            return bits.length + GLYPH_OVERHEAD;
+        }
+    }
+
+    private static final class Key {
+        private final Font font;
+        private final int glyphCode;
+
+        Key(Font font, int glyphCode) {
+            this.font = font;
+            this.glyphCode = glyphCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return glyphCode == key.glyphCode && font.equals(key.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * font.hashCode() + glyphCode;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.glyph;
+
+import com.embedler.moon.jtxt2img.mmap.NioDataBuffer;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.*;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+/**
+ * Draws text into a 1 bit {@link BufferedImage#TYPE_BYTE_BINARY} image by OR-ing cached glyph rows into the
+ * packed scanlines, a byte (8 pixels) at a time. Sets the pixels to palette index 1 where
+ * {@link Graphics2D#drawString(String, int, int)} with the foreground color would.
+ */
+public final class GlyphRenderer {
+
+    private GlyphRenderer() {
+    }
+
+    /**
+     * @return {@code false} without touching the image if the text or the image is not supported,
+     * the caller should draw with Java2D then
+     */
+    public static boolean drawString(final BufferedImage image, final Font font, final String text, final int x, final int y,
+                                     final GlyphAtlas atlas) {
+        Validate.notNull(image, "Image must not be null");
+        Validate.notNull(font, "Font must not be null");
+        Validate.notNull(text, "Text must not be null");
+        Validate.notNull(atlas, "Atlas must not be null");
+        if (!isSupported(image) || !isSimpleText(font, text)) {
+            return false;
+        }
+        GlyphVector glyphVector = font.createGlyphVector(GlyphAtlas.FONT_RENDER_CONTEXT, text);
+        if (glyphVector.getNumGlyphs() != text.length()) {
+            return false;
+        }
+
+        Target target = new Target(image);
+        for (int i = 0; i < glyphVector.getNumGlyphs(); i++) {
+            GlyphAtlas.Glyph glyph = atlas.get(font, glyphVector.getGlyphCode(i));
+            if (glyph.width == 0) {
+                continue;
+            }
+            Point2D position = glyphVector.getGlyphPosition(i);
+            int penX = x + (int) Math.floor(position.getX() + 0.5);
+            int penY = y + (int) Math.floor(position.getY() + 0.5);
+            target.blit(glyph, penX + glyph.x, penY + glyph.y);
+        }
+        return true;
+    }
+
+    static boolean isSupported(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return false;
+        }
+        MultiPixelPackedSampleModel sampleModel = (MultiPixelPackedSampleModel) raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+        return sampleModel.getPixelBitStride() == 1 && sampleModel.getDataBitOffset() == 0
+                && buffer.getDataType() == DataBuffer.TYPE_BYTE && buffer.getNumBanks() == 1
+                && (buffer instanceof DataBufferByte || buffer instanceof NioDataBuffer);
+    }
+
+    /**
+     * Left to right text without combining marks or complex scripts, which Java2D lays out one glyph per char.
+     */
+    static boolean isSimpleText(Font font, String text) {
+        if (font.hasLayoutAttributes() || font.isTransformed()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x0300 && (c < 0x0370 || c >= 0x0590)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Target {
+
+        private final int width;
+        private final int height;
+        private final int scanlineStride;
+        private final int baseOffset;
+        private final int lastByte;
+        private final int lastByteMask;
+        private final byte[] heapData;
+        private final ByteBuffer nioData;
+
+        Target(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            DataBuffer buffer = raster.getDataBuffer();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.scanlineStride = ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            this.baseOffset = buffer.getOffset();
+            this.lastByte = (width - 1) >> 3;
+            this.lastByteMask = (0xff << (7 - ((width - 1) & 7))) & 0xff;
+            if (buffer instanceof DataBufferByte) {
+                this.heapData = ((DataBufferByte) buffer).getData();
+                this.nioData = null;
+            } else {
+                this.heapData = null;
+                this.nioData = ((NioDataBuffer) buffer).getByteBuffer();
+            }
+        }
+
+        void blit(GlyphAtlas.Glyph glyph, int dx, int dy) {
+            int shift = dx & 7;
+            int firstByte = dx >> 3;
+            for (int row = 0; row < glyph.height; row++) {
+                int ty = dy + row;
+                if (ty < 0) {
+                    continue;
+                }
+                if (ty >= height) {
+                    break;
+                }
+                int rowOffset = baseOffset + ty * scanlineStride;
+                int src = row * glyph.rowBytes;
+                for (int k = 0; k < glyph.rowBytes; k++) {
+                    int bits = glyph.bits[src + k] & 0xff;
+                    if (bits == 0) {
+                        continue;
+                    }
+                    int index = firstByte + k;
+                    if (index > lastByte) {
+                        break;
+                    }
+                    or(rowOffset, index, bits >>> shift);
+                    if (shift != 0) {
+                        or(rowOffset, index + 1, (bits << (8 - shift)) & 0xff);
+                    }
+                }
+            }
+        }
+
+        private void or(int rowOffset, int index, int bits) {
+            if (index < 0 || index > lastByte || bits == 0) {
+                return;
+            }
+            if (index == lastByte) {
+                bits &= lastByteMask;
+            }
+            int offset = rowOffset + index;
+            if (heapData != null) {
+                heapData[offset] |= (byte) bits;
+            } else {
+                nioData.put(offset, (byte) (nioData.get(offset) | bits));
+            }
+        }
+    }
+}
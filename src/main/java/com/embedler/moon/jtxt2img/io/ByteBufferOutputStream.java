@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.io;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link OutputStream} writing into a {@link ByteBuffer}. When the buffer is full it either
+ * throws {@link BufferOverflowException} or, if created with a {@link ByteBufferPool}, moves the
+ * content into a buffer twice as large taken from the pool.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBufferPool pool;
+    private ByteBuffer buffer;
+
+    public ByteBufferOutputStream(final ByteBuffer buffer) {
+        Validate.notNull(buffer, "Buffer must not be null");
+        this.buffer = buffer;
+        this.pool = null;
+    }
+
+    public ByteBufferOutputStream(final ByteBufferPool pool, final int initialCapacity) {
+        Validate.notNull(pool, "Pool must not be null");
+        this.pool = pool;
+        this.buffer = pool.acquire(initialCapacity);
+    }
+
+    /**
+     * @return the buffer holding the written bytes, which may differ from the initial one for a pooled stream
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureRemaining(len);
+        buffer.put(b, off, len);
+    }
+
+    private void ensureRemaining(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        if (pool == null) {
+            throw new BufferOverflowException();
+        }
+        long required = (long) buffer.position() + length;
+        Validate.isTrue(required <= Integer.MAX_VALUE, "Buffer size overflow: %d", required);
+        ByteBuffer grown = pool.acquire((int) Math.min(Integer.MAX_VALUE, Math.max(required, 2L * buffer.capacity())));
+        buffer.flip();
+        grown.put(buffer);
+        pool.release(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.io;
+
+import org.apache.commons.lang3.Validate;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct {@link ByteBuffer}s in power of two size classes. Buffers larger than
+ * the largest class are allocated on demand and left to the garbage collector.
+ * Only buffers handed out by {@link #acquire(int)} and not yet released are taken back, so slices,
+ * foreign buffers and double releases never put the same memory into the pool twice.
+ */
+public final class ByteBufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 4096;
+    public static final int DEF_MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+    public static final int DEF_MAX_IDLE_PER_CLASS = 16;
+
+    private static final ByteBufferPool SHARED = new ByteBufferPool(DEF_MAX_BUFFER_SIZE, DEF_MAX_IDLE_PER_CLASS);
+
+    private final int maxBufferSize;
+    private final int maxIdlePerClass;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> idle;
+    private final AtomicInteger[] idleCounts;
+    // buffers handed out, weakly so buffers that are never released are still collected
+    private final Set<BufferReference> acquired = new HashSet<>();
+    private final ReferenceQueue<ByteBuffer> referenceQueue = new ReferenceQueue<>();
+
+    public ByteBufferPool(final int maxBufferSize, final int maxIdlePerClass) {
+        Validate.isTrue(maxBufferSize >= MIN_BUFFER_SIZE && Integer.bitCount(maxBufferSize) == 1,
+                "Max buffer size must be a power of two not less than %d: %d", MIN_BUFFER_SIZE, maxBufferSize);
+        Validate.isTrue(maxIdlePerClass >= 0, "Max idle buffers must not be negative: %d", maxIdlePerClass);
+        this.maxBufferSize = maxBufferSize;
+        this.maxIdlePerClass = maxIdlePerClass;
+
+        int sizeClasses = Integer.numberOfTrailingZeros(maxBufferSize) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE) + 1;
+        this.idle = new ArrayList<>(sizeClasses);
+        this.idleCounts = new AtomicInteger[sizeClasses];
+        for (int i = 0; i < sizeClasses; i++) {
+            idle.add(new ConcurrentLinkedQueue<ByteBuffer>());
+            idleCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static ByteBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return a cleared direct buffer with at least the requested capacity
+     */
+    public ByteBuffer acquire(final int capacity) {
+        Validate.isTrue(capacity >= 0, "Capacity must not be negative: %d", capacity);
+        if (capacity > maxBufferSize) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = idle.get(sizeClass).poll();
+        if (buffer != null) {
+            idleCounts[sizeClass].decrementAndGet();
+            buffer.clear();
+        } else {
+            buffer = ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+        }
+        synchronized (acquired) {
+            expungeStaleReferences();
+            acquired.add(new BufferReference(buffer, referenceQueue));
+        }
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer from {@link #acquire(int)} back, anything else is ignored. The buffer must not be used afterwards.
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > maxBufferSize) {
+            return;
+        }
+        synchronized (acquired) {
+            expungeStaleReferences();
+            if (!acquired.remove(new BufferReference(buffer, null))) {
+                return;
+            }
+        }
+        int sizeClass = sizeClass(buffer.capacity());
+        if (idleCounts[sizeClass].incrementAndGet() <= maxIdlePerClass) {
+            idle.get(sizeClass).offer(buffer);
+        } else {
+            idleCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    public int getIdleCount() {
+        int count = 0;
+        for (AtomicInteger idleCount : idleCounts) {
+            count += idleCount.get();
+        }
+        return count;
+    }
+
+    private void expungeStaleReferences() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            acquired.remove(reference);
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        int size = Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    /**
+     * Compares buffers by identity, {@link ByteBuffer#equals} compares the remaining bytes.
+     */
+    private static final class BufferReference extends WeakReference<ByteBuffer> {
+        private final int hash;
+
+        BufferReference(ByteBuffer referent, ReferenceQueue<? super ByteBuffer> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BufferReference)) {
+                return false;
+            }
+            ByteBuffer referent = get();
+            return referent != null && referent == ((BufferReference) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
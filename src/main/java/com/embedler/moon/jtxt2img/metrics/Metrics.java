@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.metrics;
+
+/**
+ * Holds the installed {@link RenderMetrics}. The default does nothing and the library skips
+ * taking timestamps while it is installed.
+ */
+public final class Metrics {
+
+    private static final RenderMetrics NOOP = new RenderMetricsAdapter();
+
+    private static volatile RenderMetrics renderMetrics = NOOP;
+
+    private Metrics() {
+    }
+
+    public static RenderMetrics get() {
+        return renderMetrics;
+    }
+
+    /**
+     * @param renderMetrics the implementation to report to, {@code null} restores the no-op default
+     */
+    public static void set(final RenderMetrics renderMetrics) {
+        Metrics.renderMetrics = renderMetrics != null ? renderMetrics : NOOP;
+    }
+
+    public static boolean isEnabled() {
+        return renderMetrics != NOOP;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} or 0 when disabled
+     */
+    public static long startTime() {
+        return renderMetrics != NOOP ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Reports the time since {@link #startTime()}.
+     */
+    public static void stageCompleted(final RenderMetrics.Stage stage, final long startTime) {
+        RenderMetrics current = renderMetrics;
+        if (current != NOOP && startTime != 0L) {
+            current.stageCompleted(stage, System.nanoTime() - startTime);
+        }
+    }
+}
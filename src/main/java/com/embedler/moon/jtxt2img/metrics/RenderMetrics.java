@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.metrics;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+
+/**
+ * Instrumentation SPI, install an implementation with {@link Metrics#set(RenderMetrics)} to bridge it to a
+ * metrics registry. Callbacks run on the rendering thread and must be cheap and thread safe.
+ * Extend {@link RenderMetricsAdapter} to implement only some of them.
+ */
+public interface RenderMetrics {
+
+    enum Stage {
+        /**
+         * Font size fitting including the metrics cache lookup.
+         */
+        FIT,
+        /**
+         * Raster allocation.
+         */
+        ALLOCATE,
+        /**
+         * Drawing the text into the raster.
+         */
+        DRAW,
+        /**
+         * Encoding into the output format, not reported for encoded image cache hits.
+         */
+        ENCODE
+    }
+
+    enum Cache {
+        FONT_METRICS, LINE_BREAKS, TEMPLATE, ENCODED_IMAGE, DISK_IMAGE
+    }
+
+    void stageCompleted(Stage stage, long nanos);
+
+    /**
+     * @param measurements number of font sizes measured to fit the text
+     */
+    void fitCompleted(int measurements);
+
+    /**
+     * Reported by the {@link StandardRasterStorage} types, custom storages are not tracked.
+     */
+    void rasterAllocated(StandardRasterStorage storage, long bytes);
+
+    void encoded(ImgTextProperties.IMG_FORMAT format, long bytes);
+
+    void cacheHit(Cache cache);
+
+    void cacheMiss(Cache cache);
+}
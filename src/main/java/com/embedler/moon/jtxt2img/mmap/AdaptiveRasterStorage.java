@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.DataBuffer;
+
+/**
+ * Picks the storage by raster size: heap arrays below {@code heapThreshold} bytes,
+ * direct buffers below {@code directThreshold} bytes and memory mapped files above.
+ */
+public final class AdaptiveRasterStorage implements RasterStorage {
+
+    public static final String HEAP_THRESHOLD_PROPERTY = "jtxt2img.raster.heapThreshold";
+    public static final String DIRECT_THRESHOLD_PROPERTY = "jtxt2img.raster.directThreshold";
+
+    public static final long DEF_HEAP_THRESHOLD = 1024 * 1024;
+    public static final long DEF_DIRECT_THRESHOLD = 16 * 1024 * 1024;
+
+    private final long heapThreshold;
+    private final long directThreshold;
+
+    public AdaptiveRasterStorage(final long heapThreshold, final long directThreshold) {
+        Validate.isTrue(heapThreshold >= 0, "Heap threshold must not be negative: %d", heapThreshold);
+        Validate.isTrue(directThreshold >= heapThreshold, "Direct threshold must not be less than heap threshold: %d", directThreshold);
+        this.heapThreshold = heapThreshold;
+        this.directThreshold = directThreshold;
+    }
+
+    public static AdaptiveRasterStorage fromSystemProperties() {
+        return new AdaptiveRasterStorage(
+                Long.getLong(HEAP_THRESHOLD_PROPERTY, DEF_HEAP_THRESHOLD),
+                Long.getLong(DIRECT_THRESHOLD_PROPERTY, DEF_DIRECT_THRESHOLD));
+    }
+
+    public long getHeapThreshold() {
+        return heapThreshold;
+    }
+
+    public long getDirectThreshold() {
+        return directThreshold;
+    }
+
+    public RasterStorage select(final long byteLength) {
+        if (byteLength < heapThreshold) {
+            return StandardRasterStorage.HEAP;
+        }
+        if (byteLength < directThreshold) {
+            return StandardRasterStorage.DIRECT;
+        }
+        return StandardRasterStorage.MAPPED;
+    }
+
+    @Override
+    public DataBuffer createDataBuffer(int type, int size, int numBanks) {
+        return select(NioDataBuffer.byteLength(type, size, numBanks)).createDataBuffer(type, size, numBanks);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdaptiveRasterStorage: heap < %s <= direct < %s <= mapped", heapThreshold, directThreshold);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees direct and memory mapped byte buffers without waiting for the garbage collector.
+ * Uses {@code sun.misc.Unsafe.invokeCleaner} where available and the buffer's cleaner on
+ * older runtimes. When neither works the buffer is left to the garbage collector.
+ */
+final class BufferCleaner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BufferCleaner.class);
+    private static final Cleaner CLEANER = createCleaner();
+
+    private BufferCleaner() {
+    }
+
+    /**
+     * The buffer and every view of it must not be accessed after this call.
+     *
+     * @return {@code true} if the buffer memory was freed
+     */
+    static boolean clean(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || CLEANER == null) {
+            return false;
+        }
+        try {
+            CLEANER.clean(buffer);
+            return true;
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Could not clean buffer, leaving it to the garbage collector", e);
+            }
+            return false;
+        }
+    }
+
+    static NioDataBuffer.Releaser releaser(final ByteBuffer buffer) {
+        return new NioDataBuffer.Releaser() {
+            @Override
+            public void release() {
+                clean(buffer);
+            }
+        };
+    }
+
+    static boolean isSupported() {
+        return CLEANER != null;
+    }
+
+    private static Cleaner createCleaner() {
+        try {
+            return new UnsafeCleaner();
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Unsafe.invokeCleaner is not available", e);
+            }
+        }
+        try {
+            return new LegacyCleaner();
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Buffer cleaner is not available, buffers will be freed by the garbage collector", e);
+            }
+        }
+        return null;
+    }
+
+    interface Cleaner {
+        void clean(ByteBuffer buffer) throws Exception;
+    }
+
+    static final class UnsafeCleaner implements Cleaner {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        UnsafeCleaner() throws Exception {
+            Class<?> cls = Class.forName("sun.misc.Unsafe");
+            Field field = cls.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = cls.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+
+        @Override
+        public void clean(ByteBuffer buffer) throws Exception {
+            invokeCleaner.invoke(unsafe, buffer);
+        }
+    }
+
+    static final class LegacyCleaner implements Cleaner {
+        private final Method cleaner;
+        private final Method clean;
+
+        LegacyCleaner() throws Exception {
+            ByteBuffer probe = ByteBuffer.allocateDirect(1);
+            cleaner = probe.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            clean = cleaner.getReturnType().getMethod("clean");
+            clean.setAccessible(true);
+            clean(probe);
+        }
+
+        @Override
+        public void clean(ByteBuffer buffer) throws Exception {
+            Object bufferCleaner = cleaner.invoke(buffer);
+            if (bufferCleaner != null) {
+                clean.invoke(bufferCleaner);
+            }
+        }
+    }
+}
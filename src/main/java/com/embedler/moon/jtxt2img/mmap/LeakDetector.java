@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports off-heap rasters that were garbage collected without being released.
+ * The level is read from the {@value #LEVEL_PROPERTY} system property: {@code DISABLED},
+ * {@code SIMPLE} (the default) or {@code PARANOID}, which also records where each leaked
+ * raster was allocated.
+ */
+public final class LeakDetector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeakDetector.class);
+
+    public static final String LEVEL_PROPERTY = "jtxt2img.leakDetection.level";
+
+    public enum Level {
+        DISABLED, SIMPLE, PARANOID
+    }
+
+    private static volatile Level level = parseLevel(System.getProperty(LEVEL_PROPERTY));
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final Set<Tracker> TRACKERS = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+    private static final AtomicLong LEAKS = new AtomicLong();
+
+    private LeakDetector() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(final Level level) {
+        LeakDetector.level = level == null ? Level.DISABLED : level;
+    }
+
+    public static long getLeakCount() {
+        reportLeaks();
+        return LEAKS.get();
+    }
+
+    static Tracker track(final Object resource, final long bytes) {
+        Level current = level;
+        if (current == Level.DISABLED) {
+            return null;
+        }
+        reportLeaks();
+        Tracker tracker = new Tracker(resource, bytes, current == Level.PARANOID ? new Throwable("Allocated here") : null);
+        TRACKERS.add(tracker);
+        return tracker;
+    }
+
+    static void reportLeaks() {
+        Reference<?> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            Tracker tracker = (Tracker) reference;
+            if (TRACKERS.remove(tracker)) {
+                LEAKS.incrementAndGet();
+                if (LOG.isWarnEnabled()) {
+                    String msg = "Image raster of {} bytes was garbage collected without being released, close the JTxt2Img to free it early";
+                    if (tracker.allocation != null) {
+                        LOG.warn(msg, tracker.bytes, tracker.allocation);
+                    } else {
+                        LOG.warn(msg + ". Set -D{}=PARANOID to see where it was allocated.", tracker.bytes, LEVEL_PROPERTY);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Level parseLevel(String value) {
+        if (value != null) {
+            for (Level l : Level.values()) {
+                if (l.name().equalsIgnoreCase(value.trim())) {
+                    return l;
+                }
+            }
+        }
+        return Level.SIMPLE;
+    }
+
+    static final class Tracker extends PhantomReference<Object> {
+        private final long bytes;
+        private final Throwable allocation;
+
+        Tracker(Object referent, long bytes, Throwable allocation) {
+            super(referent, QUEUE);
+            this.bytes = bytes;
+            this.allocation = allocation;
+        }
+
+        void close() {
+            TRACKERS.remove(this);
+            clear();
+        }
+    }
+}
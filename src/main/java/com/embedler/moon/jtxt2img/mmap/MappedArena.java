@@ -0,0 +1,388 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An arena of a few large memory mapped files carved into power of two sized slabs.
+ * Slabs are handed out as {@link NioDataBuffer}s and returned to the arena when the
+ * buffer is released or garbage collected, so mapped rasters no longer cost a temp
+ * file and a {@code mmap} call each.
+ */
+public final class MappedArena {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedArena.class);
+
+    public static final String DIRECTORY_PROPERTY = "jtxt2img.arena.directory";
+    public static final String CHUNK_SIZE_PROPERTY = "jtxt2img.arena.chunkSize";
+    public static final String MAX_SIZE_PROPERTY = "jtxt2img.arena.maxSize";
+
+    public static final int DEF_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final long DEF_MAX_SIZE = 512L * 1024 * 1024;
+    public static final int MIN_SLAB_SIZE = 4096;
+
+    private final File directory;
+    private final int chunkSize;
+    private final long maxSize;
+
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final List<ArrayDeque<Slab>> freeSlabs;
+    private final int[] slabsInUse;
+    private final Set<SlabReference> references = new HashSet<>();
+    private final ReferenceQueue<NioDataBuffer> referenceQueue = new ReferenceQueue<>();
+
+    private MappedByteBuffer currentChunk;
+    private int currentOffset;
+    private long requestedBytes;
+
+    public MappedArena(final File directory, final int chunkSize, final long maxSize) {
+        Validate.notNull(directory, "Directory must not be null");
+        Validate.isTrue(directory.isDirectory(), "Directory %s must exist", directory);
+        Validate.isTrue(chunkSize >= MIN_SLAB_SIZE && Integer.bitCount(chunkSize) == 1,
+                "Chunk size must be a power of two not less than %d: %d", MIN_SLAB_SIZE, chunkSize);
+        Validate.isTrue(maxSize >= chunkSize, "Arena size must not be less than chunk size: %d", maxSize);
+
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+
+        int sizeClasses = Integer.numberOfTrailingZeros(chunkSize) - Integer.numberOfTrailingZeros(MIN_SLAB_SIZE) + 1;
+        this.freeSlabs = new ArrayList<>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            freeSlabs.add(new ArrayDeque<Slab>());
+        }
+        this.slabsInUse = new int[sizeClasses];
+    }
+
+    public static MappedArena shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return a buffer carved from the arena, or {@code null} if the request is larger than
+     * a chunk or the arena is full
+     */
+    public NioDataBuffer allocate(final int type, final int size, final int numBanks) {
+        long length = NioDataBuffer.byteLength(type, size, numBanks);
+        if (length > chunkSize) {
+            return null;
+        }
+        int sizeClass = sizeClass((int) length);
+
+        synchronized (this) {
+            expungeStaleSlabs();
+
+            Slab slab = freeSlabs.get(sizeClass).pollFirst();
+            if (slab != null) {
+                slab.clear();
+            } else {
+                slab = carve(sizeClass);
+                if (slab == null) {
+                    return null;
+                }
+            }
+            slab.requested = length;
+            slabsInUse[sizeClass]++;
+            requestedBytes += length;
+
+            SlabReleaser releaser = new SlabReleaser();
+            NioDataBuffer buffer = NioDataBuffer.create(type, size, numBanks, slab.slice(), releaser);
+            releaser.reference = new SlabReference(buffer, slab, referenceQueue);
+            references.add(releaser.reference);
+            return buffer;
+        }
+    }
+
+    public synchronized Statistics getStatistics() {
+        expungeStaleSlabs();
+
+        int sizeClasses = freeSlabs.size();
+        int[] slabSizes = new int[sizeClasses];
+        int[] free = new int[sizeClasses];
+        long usedBytes = 0;
+        for (int i = 0; i < sizeClasses; i++) {
+            slabSizes[i] = slabSize(i);
+            free[i] = freeSlabs.get(i).size();
+            usedBytes += (long) slabsInUse[i] * slabSizes[i];
+        }
+        return new Statistics(chunks.size(), (long) chunks.size() * chunkSize, maxSize, usedBytes, requestedBytes,
+                slabSizes, slabsInUse.clone(), free);
+    }
+
+    private Slab carve(int sizeClass) {
+        int slabSize = slabSize(sizeClass);
+        if (currentChunk == null || currentOffset + slabSize > chunkSize) {
+            if ((long) (chunks.size() + 1) * chunkSize > maxSize) {
+                return null;
+            }
+            retireCurrentChunk();
+            currentChunk = mapChunk();
+            chunks.add(currentChunk);
+            currentOffset = 0;
+        }
+        Slab slab = new Slab(currentChunk, currentOffset, sizeClass);
+        currentOffset += slabSize;
+        return slab;
+    }
+
+    // the tail of a full chunk is split into the largest slabs that fit so it is not wasted
+    private void retireCurrentChunk() {
+        if (currentChunk == null) {
+            return;
+        }
+        for (int sizeClass = freeSlabs.size() - 1; sizeClass >= 0; sizeClass--) {
+            int slabSize = slabSize(sizeClass);
+            while (currentOffset + slabSize <= chunkSize) {
+                freeSlabs.get(sizeClass).addLast(new Slab(currentChunk, currentOffset, sizeClass));
+                currentOffset += slabSize;
+            }
+        }
+    }
+
+    private MappedByteBuffer mapChunk() {
+        try {
+            File tempFile = File.createTempFile(String.format("%s-", getClass().getSimpleName().toLowerCase()), ".tmp", directory);
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+                 FileChannel channel = raf.getChannel()) {
+
+                raf.setLength(chunkSize);
+
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+            } finally {
+                if (!tempFile.delete()) {
+                    tempFile.deleteOnExit();
+                }
+            }
+        } catch (Exception e) {
+            throw new JTxt2ImgIoRuntimeException(e);
+        }
+    }
+
+    private void expungeStaleSlabs() {
+        Reference<? extends NioDataBuffer> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            recycle((SlabReference) reference);
+        }
+    }
+
+    private void recycle(SlabReference reference) {
+        if (references.remove(reference)) {
+            Slab slab = reference.slab;
+            slabsInUse[slab.sizeClass]--;
+            requestedBytes -= slab.requested;
+            slab.dirty = true;
+            freeSlabs.get(slab.sizeClass).addFirst(slab);
+        }
+    }
+
+    private static int sizeClass(int length) {
+        int slabSize = Math.max(MIN_SLAB_SIZE, Integer.highestOneBit(Math.max(1, length - 1)) << 1);
+        return Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_SLAB_SIZE);
+    }
+
+    private static int slabSize(int sizeClass) {
+        return MIN_SLAB_SIZE << sizeClass;
+    }
+
+    private static final class Slab {
+        private final MappedByteBuffer chunk;
+        private final int offset;
+        private final int sizeClass;
+        private long requested;
+        private boolean dirty;
+
+        Slab(MappedByteBuffer chunk, int offset, int sizeClass) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.sizeClass = sizeClass;
+        }
+
+        ByteBuffer slice() {
+            ByteBuffer duplicate = chunk.duplicate();
+            duplicate.limit(offset + slabSize(sizeClass)).position(offset);
+            return duplicate.slice();
+        }
+
+        void clear() {
+            if (!dirty) {
+                return;
+            }
+            ByteBuffer slice = slice();
+            while (slice.remaining() >= 8) {
+                slice.putLong(0L);
+            }
+            while (slice.hasRemaining()) {
+                slice.put((byte) 0);
+            }
+            dirty = false;
+        }
+    }
+
+    private final class SlabReleaser implements NioDataBuffer.Releaser {
+        private SlabReference reference;
+
+        @Override
+        public void release() {
+            synchronized (MappedArena.this) {
+                reference.clear();
+                recycle(reference);
+            }
+        }
+    }
+
+    private static final class SlabReference extends PhantomReference<NioDataBuffer> {
+        private final Slab slab;
+
+        SlabReference(NioDataBuffer referent, Slab slab, ReferenceQueue<? super NioDataBuffer> queue) {
+            super(referent, queue);
+            this.slab = slab;
+        }
+    }
+
+    /**
+     * Point in time snapshot of arena utilisation.
+     */
+    public static final class Statistics {
+        private final int chunkCount;
+        private final long mappedBytes;
+        private final long maxBytes;
+        private final long usedBytes;
+        private final long requestedBytes;
+        private final int[] slabSizes;
+        private final int[] slabsInUse;
+        private final int[] slabsFree;
+
+        Statistics(int chunkCount, long mappedBytes, long maxBytes, long usedBytes, long requestedBytes,
+                   int[] slabSizes, int[] slabsInUse, int[] slabsFree) {
+            this.chunkCount = chunkCount;
+            this.mappedBytes = mappedBytes;
+            this.maxBytes = maxBytes;
+            this.usedBytes = usedBytes;
+            this.requestedBytes = requestedBytes;
+            this.slabSizes = slabSizes;
+            this.slabsInUse = slabsInUse;
+            this.slabsFree = slabsFree;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        public long getMappedBytes() {
+            return mappedBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * @return bytes of slabs currently handed out
+         */
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        /**
+         * @return bytes actually requested for the slabs currently handed out
+         */
+        public long getRequestedBytes() {
+            return requestedBytes;
+        }
+
+        /**
+         * @return share of the mapped memory handed out as slabs
+         */
+        public double getUtilisation() {
+            return mappedBytes == 0 ? 0 : (double) usedBytes / mappedBytes;
+        }
+
+        /**
+         * @return share of the handed out slab memory that was actually requested
+         */
+        public double getSlabEfficiency() {
+            return usedBytes == 0 ? 1 : (double) requestedBytes / usedBytes;
+        }
+
+        public int[] getSlabSizes() {
+            return slabSizes.clone();
+        }
+
+        public int[] getSlabsInUse() {
+            return slabsInUse.clone();
+        }
+
+        public int[] getSlabsFree() {
+            return slabsFree.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("MappedArena: chunks = %s mapped = %s/%s used = %s requested = %s slabs = %s in use = %s free = %s",
+                    chunkCount, mappedBytes, maxBytes, usedBytes, requestedBytes,
+                    Arrays.toString(slabSizes), Arrays.toString(slabsInUse), Arrays.toString(slabsFree));
+        }
+    }
+
+    private static final class SharedHolder {
+        private static final MappedArena INSTANCE = create();
+
+        private static MappedArena create() {
+            File directory = new File(System.getProperty(DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir")));
+            int chunkSize = Integer.getInteger(CHUNK_SIZE_PROPERTY, DEF_CHUNK_SIZE);
+            long maxSize = Long.getLong(MAX_SIZE_PROPERTY, DEF_MAX_SIZE);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Shared mapped arena in {}: chunk size = {} max size = {}", directory, chunkSize, maxSize);
+            }
+            return new MappedArena(directory, chunkSize, maxSize);
+        }
+    }
+}
@@ -25,50 +25,46 @@ import org.apache.commons.lang3.Validate;
 import java.awt.image.DataBuffer;
 import java.io.File;
 import java.io.RandomAccessFile;
-import java.nio.*;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
- * A {@code DataBuffer} implementation that is backed by a memory mapped file.
+ * Creates {@code DataBuffer}s backed by a memory mapped file.
  * Memory will be allocated outside the normal JVM heap, allowing more efficient
- * memory usage for large buffers
+ * memory usage for large buffers. Buffers are carved from the shared {@link MappedArena};
+ * only requests the arena can't serve get a temp file of their own.
+ * <p>
+ * This used to be the abstract buffer type itself, code casting to it should use {@link NioDataBuffer}.
  */
-public abstract class MappedFileBuffer extends DataBuffer {
-    private final Buffer buffer;
-    private final File tempFile;
-    private final MappedByteBuffer byteBuffer;
+public final class MappedFileBuffer {
 
-    private MappedFileBuffer(final int type, final int size, final int numBanks) {
-        super(type, size, numBanks);
+    private MappedFileBuffer() {
+    }
 
+    public static DataBuffer create(final int type, final int size, final int numBanks) {
         Validate.isTrue(size >= 0, "Integer overflow for size: %d", size);
         Validate.isTrue(numBanks >= 0, "Number of banks must be positive", numBanks);
+        if (!NioDataBuffer.isSupportedType(type)) {
+            throw new JTxt2ImgIoRuntimeException("Unsupported data type: " + type);
+        }
 
-        int componentSize = DataBuffer.getDataTypeSize(type) / 8;
+        NioDataBuffer buffer = MappedArena.shared().allocate(type, size, numBanks);
+        if (buffer != null) {
+            return buffer;
+        }
+        MappedByteBuffer byteBuffer = map(NioDataBuffer.byteLength(type, size, numBanks));
+        return NioDataBuffer.create(type, size, numBanks, byteBuffer, BufferCleaner.releaser(byteBuffer));
+    }
 
+    static MappedByteBuffer map(final long length) {
         try {
-            tempFile = File.createTempFile(String.format("%s-", getClass().getSimpleName().toLowerCase()), ".tmp");
+            File tempFile = File.createTempFile(String.format("%s-", MappedFileBuffer.class.getSimpleName().toLowerCase()), ".tmp");
             try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
                  FileChannel channel = raf.getChannel()) {
 
-                long length = ((long) size) * componentSize * numBanks;
                 raf.setLength(length);
 
-                byteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
-
-                switch (type) {
-                    case DataBuffer.TYPE_BYTE:
-                        buffer = byteBuffer;
-                        break;
-                    case DataBuffer.TYPE_USHORT:
-                        buffer = byteBuffer.asShortBuffer();
-                        break;
-                    case DataBuffer.TYPE_INT:
-                        buffer = byteBuffer.asIntBuffer();
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Unsupported data type: " + type);
-                }
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
             } finally {
                 if (!tempFile.delete()) {
                     tempFile.deleteOnExit();
@@ -78,83 +74,4 @@ public abstract class MappedFileBuffer extends DataBuffer {
             throw new JTxt2ImgIoRuntimeException(e);
         }
     }
-
-    public File getTempFile() {
-        return tempFile;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("MappedFileBuffer: %s", buffer);
-    }
-
-    public static DataBuffer create(final int type, final int size, final int numBanks) {
-        switch (type) {
-            case DataBuffer.TYPE_BYTE:
-                return new DataBufferByte(size, numBanks);
-            case DataBuffer.TYPE_USHORT:
-                return new DataBufferUShort(size, numBanks);
-            case DataBuffer.TYPE_INT:
-                return new DataBufferInt(size, numBanks);
-            default:
-                throw new JTxt2ImgIoRuntimeException("Unsupported data type: " + type);
-        }
-    }
-
-    final static class DataBufferByte extends MappedFileBuffer {
-        private final ByteBuffer buffer;
-
-        public DataBufferByte(int size, int numBanks) {
-            super(DataBuffer.TYPE_BYTE, size, numBanks);
-            buffer = (ByteBuffer) super.buffer;
-        }
-
-        @Override
-        public int getElem(int bank, int i) {
-            return buffer.get(bank * size + i) & 0xff;
-        }
-
-        @Override
-        public void setElem(int bank, int i, int val) {
-            buffer.put(bank * size + i, (byte) val);
-        }
-    }
-
-    final static class DataBufferUShort extends MappedFileBuffer {
-        private final ShortBuffer buffer;
-
-        public DataBufferUShort(int size, int numBanks) {
-            super(DataBuffer.TYPE_USHORT, size, numBanks);
-            buffer = (ShortBuffer) super.buffer;
-        }
-
-        @Override
-        public int getElem(int bank, int i) {
-            return buffer.get(bank * size + i) & 0xffff;
-        }
-
-        @Override
-        public void setElem(int bank, int i, int val) {
-            buffer.put(bank * size + i, (short) val);
-        }
-    }
-
-    final static class DataBufferInt extends MappedFileBuffer {
-        private final IntBuffer buffer;
-
-        public DataBufferInt(int size, int numBanks) {
-            super(DataBuffer.TYPE_INT, size, numBanks);
-            buffer = (IntBuffer) super.buffer;
-        }
-
-        @Override
-        public int getElem(int bank, int i) {
-            return buffer.get(bank * size + i);
-        }
-
-        @Override
-        public void setElem(int bank, int i, int val) {
-            buffer.put(bank * size + i, val);
-        }
-    }
 }
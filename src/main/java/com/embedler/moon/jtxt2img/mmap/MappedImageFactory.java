@@ -19,6 +19,7 @@
 
 package com.embedler.moon.jtxt2img.mmap;
 
+import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,24 +34,41 @@ import java.lang.reflect.UndeclaredThrowableException;
 /**
  * A factory for creating {@link BufferedImage}s backed by memory mapped files.
  * The data buffers will be allocated outside the normal JVM heap, allowing more efficient
- * memory usage for large images
+ * memory usage for large images. Where the data buffers live is decided by a
+ * {@link RasterStorage}, by default an {@link AdaptiveRasterStorage} that keeps small
+ * rasters on the heap and maps only the large ones.
  */
 public final class MappedImageFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(MappedImageFactory.class);
     private static final RasterFactory RASTER_FACTORY = createRasterFactory();
 
+    private static volatile RasterStorage defaultRasterStorage = AdaptiveRasterStorage.fromSystemProperties();
+
     private MappedImageFactory() {
     }
 
+    public static RasterStorage getDefaultRasterStorage() {
+        return defaultRasterStorage;
+    }
+
+    public static void setDefaultRasterStorage(final RasterStorage rasterStorage) {
+        Validate.notNull(rasterStorage, "Raster storage must not be null");
+        defaultRasterStorage = rasterStorage;
+    }
+
     public static BufferedImage createCompatibleMappedImage(int width, int height, int type) {
         BufferedImage temp = new BufferedImage(1, 1, type);
         return createCompatibleMappedImage(width, height, temp.getSampleModel().createCompatibleSampleModel(width, height), temp.getColorModel());
     }
 
     public static BufferedImage createCompatibleMappedImage(int width, int height, int type, IndexColorModel colorModel)  {
+        return createCompatibleMappedImage(width, height, type, colorModel, defaultRasterStorage);
+    }
+
+    public static BufferedImage createCompatibleMappedImage(int width, int height, int type, IndexColorModel colorModel, RasterStorage rasterStorage)  {
         BufferedImage temp = new BufferedImage(1, 1, type, colorModel);
-        return createCompatibleMappedImage(width, height, temp.getSampleModel().createCompatibleSampleModel(width, height), temp.getColorModel());
+        return createCompatibleMappedImage(width, height, temp.getSampleModel().createCompatibleSampleModel(width, height), temp.getColorModel(), rasterStorage);
     }
 
     public static BufferedImage createCompatibleMappedImage(int width, int height, GraphicsConfiguration configuration, int transparency)  {
@@ -66,9 +84,51 @@ public final class MappedImageFactory {
     }
 
     public static BufferedImage createCompatibleMappedImage(int width, int height, SampleModel sm, ColorModel cm) {
-        DataBuffer buffer = MappedFileBuffer.create(sm.getTransferType(), width * height * sm.getNumDataElements(), 1);
+        return createCompatibleMappedImage(width, height, sm, cm, defaultRasterStorage);
+    }
+
+    public static BufferedImage createCompatibleMappedImage(int width, int height, SampleModel sm, ColorModel cm, RasterStorage rasterStorage) {
+        Validate.notNull(rasterStorage, "Raster storage must not be null");
+        DataBuffer buffer = rasterStorage.createDataBuffer(sm.getTransferType(), getDataBufferSize(sm), 1);
+
+        return new BufferedImage(cm, createRaster(sm, buffer), cm.isAlphaPremultiplied(), null);
+    }
 
-        return new BufferedImage(cm, RASTER_FACTORY.createRaster(sm, buffer, new Point()), cm.isAlphaPremultiplied(), null);
+    /**
+     * Frees the off-heap memory of an image created by this factory right away.
+     * The image must not be used afterwards. Heap backed images are left to the garbage collector.
+     *
+     * @return {@code true} if memory was released
+     */
+    public static boolean release(final BufferedImage image) {
+        if (image == null) {
+            return false;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return buffer instanceof NioDataBuffer && ((NioDataBuffer) buffer).release();
+    }
+
+    static int getDataBufferSize(SampleModel sm) {
+        final long size;
+        if (sm instanceof MultiPixelPackedSampleModel) {
+            MultiPixelPackedSampleModel mppsm = (MultiPixelPackedSampleModel) sm;
+            size = (long) mppsm.getScanlineStride() * sm.getHeight();
+        } else if (sm instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel) sm;
+            size = (long) sppsm.getScanlineStride() * sm.getHeight();
+        } else {
+            size = (long) sm.getWidth() * sm.getHeight() * sm.getNumDataElements();
+        }
+        Validate.isTrue(size <= Integer.MAX_VALUE, "Integer overflow for size: %d", size);
+        return (int) size;
+    }
+
+    private static WritableRaster createRaster(SampleModel sm, DataBuffer buffer) {
+        // the JDK raster implementations only accept the JDK data buffers but are much faster to draw on
+        if (buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort || buffer instanceof DataBufferInt) {
+            return Raster.createWritableRaster(sm, buffer, new Point());
+        }
+        return RASTER_FACTORY.createRaster(sm, buffer, new Point());
     }
 
     private static RasterFactory createRasterFactory() {
@@ -97,6 +157,19 @@ public final class MappedImageFactory {
     static final class SunRasterFactory implements RasterFactory {
         final private Constructor<WritableRaster> factoryMethod = getFactoryMethod();
 
+        SunRasterFactory() {
+            // probe once so an unexported sun.awt.image falls back to the generic raster at class
+            // initialization instead of failing the first off-heap render
+            SampleModel model = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, 1, 1, 1);
+            try {
+                factoryMethod.newInstance(model, model.createDataBuffer(), new Point());
+            } catch (IllegalAccessException e) {
+                throw new IllegalAccessError(e.getMessage());
+            } catch (InstantiationException | InvocationTargetException e) {
+                throw new InstantiationError(e.getMessage());
+            }
+        }
+
         @SuppressWarnings("unchecked")
         private static Constructor<WritableRaster> getFactoryMethod() {
             try {
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A {@code DataBuffer} implementation that is backed by a NIO {@link ByteBuffer},
+ * either a direct buffer or a memory mapped file region.
+ * <p>
+ * The memory is freed by the garbage collector or, earlier, by {@link #release()}.
+ * A released buffer reads and writes nothing but index errors, so it must not be
+ * drawn on or encoded anymore.
+ */
+public abstract class NioDataBuffer extends DataBuffer {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private ByteBuffer byteBuffer;
+    private Releaser releaser;
+    private LeakDetector.Tracker tracker;
+
+    private NioDataBuffer(final int type, final int size, final int numBanks, final ByteBuffer byteBuffer, final Releaser releaser) {
+        super(type, size, numBanks);
+
+        Validate.isTrue(size >= 0, "Integer overflow for size: %d", size);
+        Validate.isTrue(numBanks >= 0, "Number of banks must be positive", numBanks);
+        Validate.isTrue(byteBuffer.capacity() >= byteLength(type, size, numBanks), "Buffer is too small for %d elements", size);
+
+        this.byteBuffer = byteBuffer;
+        this.releaser = releaser;
+        if (releaser != null) {
+            this.tracker = LeakDetector.track(this, byteLength(type, size, numBanks));
+        }
+    }
+
+    /**
+     * Returns a view of the backing memory, which must not be used after the buffer is released.
+     */
+    public ByteBuffer getByteBuffer() {
+        return byteBuffer.duplicate();
+    }
+
+    public synchronized boolean isReleased() {
+        return byteBuffer == EMPTY;
+    }
+
+    /**
+     * Frees the backing memory now instead of when the buffer is garbage collected.
+     *
+     * @return {@code false} if the buffer was already released
+     */
+    public boolean release() {
+        final Releaser currentReleaser;
+        synchronized (this) {
+            if (byteBuffer == EMPTY) {
+                return false;
+            }
+            byteBuffer = EMPTY;
+            detach(EMPTY);
+            currentReleaser = releaser;
+            releaser = null;
+            if (tracker != null) {
+                tracker.close();
+                tracker = null;
+            }
+        }
+        if (currentReleaser != null) {
+            currentReleaser.release();
+        }
+        return true;
+    }
+
+    abstract void detach(ByteBuffer empty);
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s", getClass().getSimpleName(), byteBuffer);
+    }
+
+    public static long byteLength(final int type, final int size, final int numBanks) {
+        return ((long) size) * (DataBuffer.getDataTypeSize(type) / 8) * numBanks;
+    }
+
+    public static boolean isSupportedType(final int type) {
+        return type == DataBuffer.TYPE_BYTE || type == DataBuffer.TYPE_USHORT || type == DataBuffer.TYPE_INT;
+    }
+
+    public static NioDataBuffer create(final int type, final int size, final int numBanks, final ByteBuffer byteBuffer) {
+        return create(type, size, numBanks, byteBuffer, null);
+    }
+
+    /**
+     * @param releaser frees the memory on {@link #release()}, may be {@code null} if the
+     *                 memory is left to the garbage collector
+     */
+    static NioDataBuffer create(final int type, final int size, final int numBanks, final ByteBuffer byteBuffer, final Releaser releaser) {
+        switch (type) {
+            case DataBuffer.TYPE_BYTE:
+                return new DataBufferByte(size, numBanks, byteBuffer, releaser);
+            case DataBuffer.TYPE_USHORT:
+                return new DataBufferUShort(size, numBanks, byteBuffer, releaser);
+            case DataBuffer.TYPE_INT:
+                return new DataBufferInt(size, numBanks, byteBuffer, releaser);
+            default:
+                throw new JTxt2ImgIoRuntimeException("Unsupported data type: " + type);
+        }
+    }
+
+    final static class DataBufferByte extends NioDataBuffer {
+        private ByteBuffer buffer;
+
+        DataBufferByte(int size, int numBanks, ByteBuffer byteBuffer, Releaser releaser) {
+            super(DataBuffer.TYPE_BYTE, size, numBanks, byteBuffer, releaser);
+            buffer = byteBuffer;
+        }
+
+        @Override
+        void detach(ByteBuffer empty) {
+            buffer = empty;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(bank * size + i) & 0xff;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(bank * size + i, (byte) val);
+        }
+    }
+
+    final static class DataBufferUShort extends NioDataBuffer {
+        private ShortBuffer buffer;
+
+        DataBufferUShort(int size, int numBanks, ByteBuffer byteBuffer, Releaser releaser) {
+            super(DataBuffer.TYPE_USHORT, size, numBanks, byteBuffer, releaser);
+            buffer = byteBuffer.asShortBuffer();
+        }
+
+        @Override
+        void detach(ByteBuffer empty) {
+            buffer = empty.asShortBuffer();
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(bank * size + i) & 0xffff;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(bank * size + i, (short) val);
+        }
+    }
+
+    final static class DataBufferInt extends NioDataBuffer {
+        private IntBuffer buffer;
+
+        DataBufferInt(int size, int numBanks, ByteBuffer byteBuffer, Releaser releaser) {
+            super(DataBuffer.TYPE_INT, size, numBanks, byteBuffer, releaser);
+            buffer = byteBuffer.asIntBuffer();
+        }
+
+        @Override
+        void detach(ByteBuffer empty) {
+            buffer = empty.asIntBuffer();
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(bank * size + i);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(bank * size + i, val);
+        }
+    }
+
+    /**
+     * Frees the memory behind a released buffer.
+     */
+    interface Releaser {
+        void release();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.mmap;
+
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+
+public enum StandardRasterStorage implements RasterStorage {
+
+    /**
+     * Plain java arrays on the JVM heap, the fastest option for small rasters.
+     */
+    HEAP {
+        @Override
+        public DataBuffer createDataBuffer(int type, int size, int numBanks) {
+            DataBuffer buffer;
+            switch (type) {
+                case DataBuffer.TYPE_BYTE:
+                    buffer = new java.awt.image.DataBufferByte(size, numBanks);
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                    buffer = new java.awt.image.DataBufferUShort(size, numBanks);
+                    break;
+                case DataBuffer.TYPE_INT:
+                    buffer = new java.awt.image.DataBufferInt(size, numBanks);
+                    break;
+                default:
+                    throw new JTxt2ImgIoRuntimeException("Unsupported data type: " + type);
+            }
+            Metrics.get().rasterAllocated(this, NioDataBuffer.byteLength(type, size, numBanks));
+            return buffer;
+        }
+    },
+
+    /**
+     * Direct byte buffers allocated outside the JVM heap.
+     */
+    DIRECT {
+        @Override
+        public DataBuffer createDataBuffer(int type, int size, int numBanks) {
+            if (!NioDataBuffer.isSupportedType(type)) {
+                throw new JTxt2ImgIoRuntimeException("Unsupported data type: " + type);
+            }
+            long length = NioDataBuffer.byteLength(type, size, numBanks);
+            if (length > Integer.MAX_VALUE) {
+                throw new JTxt2ImgIoRuntimeException("Raster is too large for a direct buffer: " + length);
+            }
+            ByteBuffer byteBuffer = ByteBuffer.allocateDirect((int) length);
+            Metrics.get().rasterAllocated(this, length);
+            return NioDataBuffer.create(type, size, numBanks, byteBuffer, BufferCleaner.releaser(byteBuffer));
+        }
+    },
+
+    /**
+     * Memory mapped temporary files, see {@link MappedFileBuffer}.
+     */
+    MAPPED {
+        @Override
+        public DataBuffer createDataBuffer(int type, int size, int numBanks) {
+            DataBuffer buffer = MappedFileBuffer.create(type, size, numBanks);
+            Metrics.get().rasterAllocated(this, NioDataBuffer.byteLength(type, size, numBanks));
+            return buffer;
+        }
+    }
+}
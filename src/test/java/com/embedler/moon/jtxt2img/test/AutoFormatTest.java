@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.encoder.PaletteReducer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AutoFormatTest {
+
+    private static final int[][] SIZES = {{16, 16}, {120, 60}, {300, 250}, {1000, 400}};
+
+    @Test
+    public void picksSmallerFormat() {
+        for (int bits : new int[]{1, 2, 4}) {
+            for (int[] size : SIZES) {
+                RenderSpec spec = RenderSpec.withText("Auto " + size[0])
+                        .size(size[0], size[1])
+                        .encodeOptions(EncodeOptions.DEFAULT.paletteBits(bits));
+                byte[] png = encode(spec.format(ImgTextProperties.IMG_FORMAT.PNG));
+                byte[] gif = encode(spec.format(ImgTextProperties.IMG_FORMAT.GIF));
+
+                try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(spec.format(ImgTextProperties.IMG_FORMAT.AUTO)).generate()) {
+                    Assert.assertNull(jTxt2Img.getEncodedFormat());
+                    ByteArrayOutputStream auto = new ByteArrayOutputStream();
+                    Assert.assertTrue(jTxt2Img.write(auto));
+
+                    String msg = bits + " bits " + size[0] + "x" + size[1];
+                    Assert.assertTrue(msg, auto.size() <= Math.min(png.length, gif.length));
+                    Assert.assertEquals(msg, auto.size() == png.length && png.length <= gif.length
+                            ? ImgTextProperties.IMG_FORMAT.PNG : ImgTextProperties.IMG_FORMAT.GIF, jTxt2Img.getEncodedFormat());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deeperPalettesAntiAlias() throws IOException {
+        for (int bits : new int[]{2, 4}) {
+            RenderSpec spec = RenderSpec.withText("Smooth")
+                    .size(200, 80)
+                    .backgroundColor(0xffffff)
+                    .foregroundColor(0x000080)
+                    .format(ImgTextProperties.IMG_FORMAT.PNG)
+                    .encodeOptions(EncodeOptions.DEFAULT.paletteBits(bits));
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(encode(spec)));
+            IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+            Assert.assertEquals(1 << bits, colorModel.getMapSize());
+            Assert.assertEquals(0xffffff, colorModel.getRGB(0) & 0xffffff);
+            Assert.assertEquals(0x000080, colorModel.getRGB(colorModel.getMapSize() - 1) & 0xffffff);
+
+            Set<Integer> shades = new HashSet<>();
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    shades.add(image.getRGB(x, y));
+                }
+            }
+            Assert.assertTrue(bits + " bits: " + shades.size(), shades.size() > 2);
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            Assert.assertTrue(JTxt2Img.withSpec(spec).writeStreaming(streamed, 16));
+            Assert.assertArrayEquals(encode(spec), streamed.toByteArray());
+        }
+    }
+
+    @Test
+    public void reducesUnusedDepth() {
+        byte[] map = new byte[16];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = (byte) (i * 17);
+        }
+        BufferedImage image = new BufferedImage(37, 9, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(4, 16, map, map, map));
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, (x + y) % 3 == 0 ? 15 : 6);
+            }
+        }
+
+        BufferedImage reduced = PaletteReducer.reduce(image);
+        Assert.assertEquals(1, reduced.getColorModel().getPixelSize());
+        TestImages.assertSamePixels("reduced", image, reduced);
+
+        image.getRaster().setSample(0, 0, 0, 1);
+        Assert.assertEquals(2, PaletteReducer.reduce(image).getColorModel().getPixelSize());
+        image.getRaster().setSample(1, 0, 0, 2);
+        image.getRaster().setSample(2, 0, 0, 3);
+        Assert.assertSame(image, PaletteReducer.reduce(image));
+    }
+
+    @Test
+    public void reportsFormatOfCachedBytes() {
+        EncodedImageCache cache = new EncodedImageCache(1024 * 1024);
+        RenderSpec spec = RenderSpec.withText("Cached").size(120, 60).format(ImgTextProperties.IMG_FORMAT.AUTO);
+
+        try (JTxt2Img first = JTxt2Img.withSpec(spec).cache(cache).generate()) {
+            first.write(new ByteArrayOutputStream());
+            try (JTxt2Img second = JTxt2Img.withSpec(spec).cache(cache).generate()) {
+                second.write(new ByteArrayOutputStream());
+
+                Assert.assertEquals(1, cache.getHitCount());
+                Assert.assertNotNull(first.getEncodedFormat());
+                Assert.assertEquals(first.getEncodedFormat(), second.getEncodedFormat());
+            }
+        }
+    }
+
+    private static byte[] encode(RenderSpec spec) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(spec).generate()) {
+            Assert.assertTrue(jTxt2Img.write(out));
+        }
+        return out.toByteArray();
+    }
+}
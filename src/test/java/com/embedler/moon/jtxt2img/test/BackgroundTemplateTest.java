@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.BackgroundTemplate;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.cache.TemplateCache;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class BackgroundTemplateTest {
+
+    private static final int LEFT = 0xff0000;
+    private static final int RIGHT = 0x0000ff;
+
+    private static File directory;
+    private static File templateFile;
+
+    @BeforeClass
+    public static void createTemplate() throws IOException {
+        directory = File.createTempFile("jtxt2img-templates", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+        // left half red, right half blue, wider than the placeholders below
+        BufferedImage template = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < template.getHeight(); y++) {
+            for (int x = 0; x < template.getWidth(); x++) {
+                template.setRGB(x, y, x < template.getWidth() / 2 ? LEFT : RIGHT);
+            }
+        }
+        templateFile = new File(directory, "template.png");
+        Assert.assertTrue(ImageIO.write(template, "png", templateFile));
+    }
+
+    @AfterClass
+    public static void deleteTemplate() {
+        Assert.assertTrue(templateFile.delete() && directory.delete());
+        TemplateCache.shared().clear();
+    }
+
+    @Test
+    public void coversAndCrops() {
+        // 200x200 scales the template by 1 and crops its center, 100x25 scales by 0.25 and keeps the height
+        BufferedImage square = BackgroundTemplate.file(templateFile).render(200, 200);
+        Assert.assertEquals(LEFT, square.getRGB(5, 100) & 0xffffff);
+        Assert.assertEquals(RIGHT, square.getRGB(194, 100) & 0xffffff);
+
+        BufferedImage wide = BackgroundTemplate.file(templateFile).render(100, 25);
+        Assert.assertEquals(100, wide.getWidth());
+        Assert.assertEquals(25, wide.getHeight());
+        Assert.assertEquals(LEFT, wide.getRGB(10, 12) & 0xffffff);
+        Assert.assertEquals(RIGHT, wide.getRGB(89, 12) & 0xffffff);
+    }
+
+    @Test
+    public void drawsTextOnTemplate() throws IOException {
+        for (ImgTextProperties.IMG_FORMAT format : ImgTextProperties.IMG_FORMAT.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (JTxt2Img jTxt2Img = JTxt2Img.withText("Template")
+                    .width(200)
+                    .height(200)
+                    .foregroundColor("fff")
+                    .format(format)
+                    .backgroundTemplate(BackgroundTemplate.file(templateFile))
+                    .generate()) {
+                Assert.assertTrue(jTxt2Img.write(bytes));
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+            Assert.assertNotNull(format.name(), image);
+
+            int tolerance = format == ImgTextProperties.IMG_FORMAT.JPG ? 48 : 0;
+            Assert.assertTrue(format.name(), near(LEFT, image.getRGB(5, 5), tolerance));
+            Assert.assertTrue(format.name(), near(RIGHT, image.getRGB(194, 194), tolerance));
+            int white = 0;
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (near(0xffffff, image.getRGB(x, 100), tolerance)) {
+                    white++;
+                }
+            }
+            Assert.assertTrue(format.name(), white > 0);
+        }
+    }
+
+    @Test
+    public void cachesScaledTemplates() {
+        TemplateCache cache = new TemplateCache(2 * 4 * 100 * 50);
+        BackgroundTemplate template = BackgroundTemplate.file(templateFile);
+        BufferedImage first = cache.get(template, 100, 50);
+        Assert.assertSame(first, cache.get(BackgroundTemplate.file(templateFile), 100, 50));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.get(template, 50, 100);
+        Assert.assertEquals(2, cache.size());
+        cache.get(template, 60, 60);
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+        Assert.assertNotSame(first, cache.get(template, 100, 50));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    public void missesReplacedTemplates() throws IOException {
+        File replaced = new File(directory, "replaced.png");
+        try {
+            Assert.assertTrue(ImageIO.write(ImageIO.read(templateFile), "png", replaced));
+            TemplateCache cache = new TemplateCache(4 * 100 * 50 * 2);
+            BackgroundTemplate template = BackgroundTemplate.file(replaced);
+            EncodedImageCache.Key key = EncodedImageCache.Key.of(RenderSpec.withText("Key").backgroundTemplate(template));
+            Assert.assertEquals(LEFT, cache.get(template, 100, 50).getRGB(5, 25) & 0xffffff);
+
+            BufferedImage blue = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < blue.getHeight(); y++) {
+                for (int x = 0; x < blue.getWidth(); x++) {
+                    blue.setRGB(x, y, RIGHT);
+                }
+            }
+            Assert.assertTrue(ImageIO.write(blue, "png", replaced));
+            Assert.assertTrue(replaced.setLastModified(replaced.lastModified() + 2000));
+            Assert.assertEquals(RIGHT, cache.get(template, 100, 50).getRGB(5, 25) & 0xffffff);
+            Assert.assertEquals(2, cache.getMissCount());
+            Assert.assertNotEquals(key, EncodedImageCache.Key.of(RenderSpec.withText("Key").backgroundTemplate(template)));
+        } finally {
+            Assert.assertTrue(replaced.delete());
+        }
+    }
+
+    @Test
+    public void templatesAreRenderKeys() {
+        RenderSpec spec = RenderSpec.withText("Key").size(120, 60);
+        RenderSpec withTemplate = spec.backgroundTemplate(BackgroundTemplate.file(templateFile));
+        Assert.assertNotEquals(spec, withTemplate);
+        Assert.assertEquals(withTemplate, spec.backgroundTemplate(BackgroundTemplate.file(templateFile)));
+        Assert.assertNotEquals(EncodedImageCache.Key.of(spec), EncodedImageCache.Key.of(withTemplate));
+        Assert.assertNotEquals(BackgroundTemplate.file(templateFile), BackgroundTemplate.resource(templateFile.getName()));
+    }
+
+    @Test
+    public void readsResources() throws IOException {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, previous)) {
+            thread.setContextClassLoader(classLoader);
+            BufferedImage image = BackgroundTemplate.resource("/template.png").render(200, 200);
+            Assert.assertEquals(LEFT, image.getRGB(5, 100) & 0xffffff);
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    @Test
+    public void missingTemplates() {
+        try {
+            BackgroundTemplate.file(new File(directory, "missing.png")).render(10, 10);
+            Assert.fail();
+        } catch (JTxt2ImgIoRuntimeException expected) {
+            // expected
+        }
+        try {
+            BackgroundTemplate.resource("missing/template.png").render(10, 10);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void templatesAreNotStreamed() {
+        JTxt2Img jTxt2Img = JTxt2Img.withText("Stream")
+                .width(100)
+                .height(50)
+                .format(ImgTextProperties.IMG_FORMAT.PNG)
+                .backgroundTemplate(BackgroundTemplate.file(templateFile));
+        Assert.assertFalse(jTxt2Img.writeStreaming(new ByteArrayOutputStream()));
+    }
+
+    private static boolean near(int expected, int actual, int tolerance) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            if (Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff)) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.io.ByteBufferPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void reusesReleasedBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(ByteBufferPool.MIN_BUFFER_SIZE * 4, 2);
+        ByteBuffer buffer = pool.acquire(5000);
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(ByteBufferPool.MIN_BUFFER_SIZE * 2, buffer.capacity());
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertSame(buffer, pool.acquire(5000));
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void ignoresForeignSlicedAndDoubleReleasedBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(ByteBufferPool.MIN_BUFFER_SIZE * 4, 2);
+        pool.release(ByteBuffer.allocateDirect(ByteBufferPool.MIN_BUFFER_SIZE));
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        ByteBuffer buffer = pool.acquire(ByteBufferPool.MIN_BUFFER_SIZE);
+        pool.release(buffer.slice());
+        pool.release(buffer.duplicate());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        pool.release(buffer);
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertSame(buffer, pool.acquire(ByteBufferPool.MIN_BUFFER_SIZE));
+        Assert.assertNotSame(buffer, pool.acquire(ByteBufferPool.MIN_BUFFER_SIZE));
+    }
+}
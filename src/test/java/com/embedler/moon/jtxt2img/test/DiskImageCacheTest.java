@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.BackgroundTemplate;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.DiskImageCache;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DiskImageCacheTest {
+
+    private File directory;
+    private final List<DiskImageCache> caches = new ArrayList<>();
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("jtxt2img-disk-cache").toFile();
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        for (DiskImageCache cache : caches) {
+            cache.close();
+        }
+        delete(directory);
+    }
+
+    @Test
+    public void storesImagesByContentHash() {
+        DiskImageCache cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        EncodedImageCache.Key key = key("Hello", ImgTextProperties.IMG_FORMAT.PNG);
+        Assert.assertNull(cache.get(key));
+
+        byte[] data = {1, 2, 3, 4};
+        cache.put(key, data);
+        Assert.assertArrayEquals(data, cache.get(key));
+        Assert.assertNull(cache.get(key("Hello", ImgTextProperties.IMG_FORMAT.GIF)));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(data.length, cache.getTotalBytes());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        List<File> files = imageFiles(directory);
+        Assert.assertEquals(1, files.size());
+        Assert.assertTrue(files.get(0).getName().matches("[0-9a-f]{64}"));
+        Assert.assertEquals(files.get(0).getName().substring(0, 2), files.get(0).getParentFile().getName());
+    }
+
+    @Test
+    public void survivesRestartsAndLostIndexes() throws IOException {
+        DiskImageCache cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("Restart " + i, ImgTextProperties.IMG_FORMAT.PNG), new byte[i + 1]);
+        }
+        cache.close();
+
+        cache = open(1024 * 1024, 16);
+        Assert.assertEquals(DiskImageCache.DEF_INDEX_SLOTS, cache.getIndexSlots());
+        Assert.assertEquals(10, cache.size());
+        Assert.assertArrayEquals(new byte[4], cache.get(key("Restart 3", ImgTextProperties.IMG_FORMAT.PNG)));
+        cache.close();
+
+        Assert.assertTrue(new File(directory, "index").delete());
+        cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(55, cache.getTotalBytes());
+        Assert.assertArrayEquals(new byte[8], cache.get(key("Restart 7", ImgTextProperties.IMG_FORMAT.PNG)));
+    }
+
+    @Test
+    public void evictsToTotalSize() {
+        DiskImageCache cache = open(10 * 1000, DiskImageCache.DEF_INDEX_SLOTS);
+        for (int i = 0; i < 50; i++) {
+            cache.put(key("Evict " + i, ImgTextProperties.IMG_FORMAT.JPG), new byte[1000]);
+            Assert.assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+        }
+        Assert.assertTrue(cache.getEvictionCount() >= 40);
+        Assert.assertEquals(cache.size(), imageFiles(directory).size());
+        Assert.assertNotNull(cache.get(key("Evict 49", ImgTextProperties.IMG_FORMAT.JPG)));
+
+        cache.put(key("Too large", ImgTextProperties.IMG_FORMAT.JPG), new byte[10 * 1000 + 1]);
+        Assert.assertNull(cache.get(key("Too large", ImgTextProperties.IMG_FORMAT.JPG)));
+    }
+
+    @Test
+    public void evictsWhenIndexIsFull() {
+        DiskImageCache cache = open(1024 * 1024, 16);
+        for (int i = 0; i < 100; i++) {
+            cache.put(key("Slot " + i, ImgTextProperties.IMG_FORMAT.GIF), new byte[]{(byte) i});
+            Assert.assertTrue(cache.size() <= 12);
+        }
+        Assert.assertEquals(cache.size(), imageFiles(directory).size());
+        Assert.assertEquals(cache.size(), cache.getTotalBytes());
+        int found = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] data = cache.get(key("Slot " + i, ImgTextProperties.IMG_FORMAT.GIF));
+            if (data != null) {
+                Assert.assertArrayEquals(new byte[]{(byte) i}, data);
+                found++;
+            }
+        }
+        Assert.assertEquals(cache.size(), found);
+    }
+
+    @Test
+    public void ignoresDamagedFiles() throws IOException {
+        DiskImageCache cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        EncodedImageCache.Key key = key("Damaged", ImgTextProperties.IMG_FORMAT.PNG);
+        cache.put(key, new byte[100]);
+        Files.write(imageFiles(directory).get(0).toPath(), new byte[10]);
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getTotalBytes());
+        Assert.assertTrue(imageFiles(directory).isEmpty());
+
+        cache.put(key, new byte[100]);
+        Assert.assertTrue(imageFiles(directory).get(0).delete());
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void sharesDirectoryBetweenInstances() throws Exception {
+        // room for about half of the images, so writers and evictions interleave
+        final DiskImageCache first = open(8 * 1000, DiskImageCache.DEF_INDEX_SLOTS);
+        final DiskImageCache second = open(8 * 1000, DiskImageCache.DEF_INDEX_SLOTS);
+        first.put(key("Shared", ImgTextProperties.IMG_FORMAT.PNG), new byte[]{42});
+        Assert.assertArrayEquals(new byte[]{42}, second.get(key("Shared", ImgTextProperties.IMG_FORMAT.PNG)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final DiskImageCache cache = t % 2 == 0 ? first : second;
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 200; i++) {
+                            int image = (i * 7 + thread) % 100;
+                            EncodedImageCache.Key key = key("Concurrent " + image, ImgTextProperties.IMG_FORMAT.PNG);
+                            byte[] data = cache.get(key);
+                            if (data == null) {
+                                cache.put(key, content(image));
+                            } else {
+                                Assert.assertArrayEquals(content(image), data);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(first.size(), second.size());
+        Assert.assertTrue(first.getEvictionCount() + second.getEvictionCount() > 0);
+        Assert.assertTrue(first.getTotalBytes() <= first.getMaxBytes());
+        Assert.assertEquals(0, new File(directory, "tmp").list().length);
+    }
+
+    @Test
+    public void cachesRenders() {
+        DiskImageCache cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        RenderSpec spec = RenderSpec.withText("Disk").size(200, 100).format(ImgTextProperties.IMG_FORMAT.AUTO);
+
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        try (JTxt2Img first = JTxt2Img.withSpec(spec).diskCache(cache).generate()) {
+            Assert.assertTrue(first.write(rendered));
+            Assert.assertEquals(1, cache.size());
+
+            EncodedImageCache memory = new EncodedImageCache(1024 * 1024);
+            ByteArrayOutputStream cached = new ByteArrayOutputStream();
+            try (JTxt2Img second = JTxt2Img.withSpec(spec).cache(memory).diskCache(cache).generate()) {
+                Assert.assertTrue(second.write(cached));
+                Assert.assertEquals(1, cache.getHitCount());
+                Assert.assertArrayEquals(rendered.toByteArray(), cached.toByteArray());
+                Assert.assertEquals(first.getEncodedFormat(), second.getEncodedFormat());
+                Assert.assertEquals(1, memory.size());
+            }
+        }
+    }
+
+    @Test
+    public void missesReplacedTemplates() throws IOException {
+        DiskImageCache cache = open(1024 * 1024, DiskImageCache.DEF_INDEX_SLOTS);
+        File template = new File(directory, "template.png");
+        Files.write(template.toPath(), new byte[10]);
+        RenderSpec spec = RenderSpec.withText("Template").backgroundTemplate(BackgroundTemplate.file(template));
+        cache.put(EncodedImageCache.Key.of(spec), content(1));
+        Assert.assertArrayEquals(content(1), cache.get(EncodedImageCache.Key.of(spec)));
+
+        // keys take the template version when they are created
+        Files.write(template.toPath(), new byte[20]);
+        Assert.assertNull(cache.get(EncodedImageCache.Key.of(spec)));
+    }
+
+    private DiskImageCache open(long maxBytes, int indexSlots) {
+        DiskImageCache cache = DiskImageCache.open(directory, maxBytes, indexSlots);
+        caches.add(cache);
+        return cache;
+    }
+
+    private static EncodedImageCache.Key key(String text, ImgTextProperties.IMG_FORMAT format) {
+        return EncodedImageCache.Key.of(RenderSpec.withText(text).format(format));
+    }
+
+    private static byte[] content(int image) {
+        byte[] data = new byte[100 + image];
+        Arrays.fill(data, (byte) image);
+        return data;
+    }
+
+    private static List<File> imageFiles(File directory) {
+        List<File> result = new ArrayList<>();
+        File[] subdirectories = directory.listFiles();
+        for (File subdirectory : subdirectories != null ? subdirectories : new File[0]) {
+            File[] files = subdirectory.getName().length() == 2 ? subdirectory.listFiles() : null;
+            if (files != null) {
+                result.addAll(Arrays.asList(files));
+            }
+        }
+        return result;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Assert.assertTrue(file.delete());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.ImgTextPropertiesAccessor;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class EncodedImageCacheTest {
+
+    @Test
+    public void sharesEntryForEquivalentProperties() {
+        EncodedImageCache cache = new EncodedImageCache(1 << 20);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("300x250").backgroundColor("fff").foregroundColor("000")
+                .format(ImgTextProperties.IMG_FORMAT.PNG).width(300).height(250)
+                .cache(cache).generate()) {
+            jTxt2Img.write(first);
+        }
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("300x250").backgroundColor("ffffff").foregroundColor("000000")
+                .format(ImgTextProperties.IMG_FORMAT.PNG).width(300).height(250)
+                .cache(cache).generate()) {
+            jTxt2Img.write(second);
+        }
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    @Test
+    public void boundedByTotalBytes() {
+        EncodedImageCache cache = new EncodedImageCache(100);
+
+        cache.put(key("a"), new byte[40], 1000);
+        cache.put(key("b"), new byte[40], 1000);
+        Assert.assertEquals(80, cache.getTotalBytes());
+
+        cache.put(key("c"), new byte[40], 1000);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(80, cache.getTotalBytes());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.get(key("a")));
+
+        cache.put(key("d"), new byte[101], 1000);
+        Assert.assertNull(cache.get(key("d")));
+    }
+
+    @Test
+    public void evictsCheapEntriesFirst() {
+        EncodedImageCache cache = new EncodedImageCache(100);
+
+        cache.put(key("expensive"), new byte[40], 1000000);
+        cache.put(key("cheap"), new byte[40], 10);
+        cache.put(key("new"), new byte[40], 1000);
+
+        Assert.assertNotNull(cache.get(key("expensive")));
+        Assert.assertNull(cache.get(key("cheap")));
+        Assert.assertNotNull(cache.get(key("new")));
+    }
+
+    private static EncodedImageCache.Key key(String text) {
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setText(text);
+        return EncodedImageCache.Key.of(new ImgTextPropertiesAccessor(imgTextProperties));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.TextFitter;
+import com.embedler.moon.jtxt2img.cache.FontMetricsCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+public class FontMetricsCacheTest {
+
+    private static final Font FONT = CoreHelper.DEF_PLACEHOLDER_FONT;
+
+    @Test
+    public void countsHitsAndMisses() {
+        FontMetricsCache cache = new FontMetricsCache(4);
+        Assert.assertNull(cache.get(FONT, "300x250", 300, 250));
+
+        ImageProcessor.ImageTextSettings settings = TextFitter.fit("300x250", FONT, 300, 250);
+        cache.put(FONT, "300x250", 300, 250, settings);
+
+        Assert.assertSame(settings, cache.get(FONT, "300x250", 300, 250));
+        Assert.assertNull(cache.get(FONT, "300x250", 300, 251));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        FontMetricsCache cache = new FontMetricsCache(2);
+        ImageProcessor.ImageTextSettings settings = TextFitter.fit("1", FONT, 10, 10);
+
+        cache.put(FONT, "a", 10, 10, settings);
+        cache.put(FONT, "b", 10, 10, settings);
+        cache.get(FONT, "a", 10, 10);
+        cache.put(FONT, "c", 10, 10, settings);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNotNull(cache.get(FONT, "a", 10, 10));
+        Assert.assertNull(cache.get(FONT, "b", 10, 10));
+
+        cache.setCapacity(0);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(3, cache.getEvictionCount());
+        cache.put(FONT, "a", 10, 10, settings);
+        Assert.assertNull(cache.get(FONT, "a", 10, 10));
+    }
+}
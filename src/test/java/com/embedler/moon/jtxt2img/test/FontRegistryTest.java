@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.FontRegistry;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextFitter;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.cache.FontMetricsCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+public class FontRegistryTest {
+
+    private static final String NAME = "registry-test";
+
+    private File fontFile;
+
+    @Before
+    public void findFontFile() {
+        // the JDK doesn't ship font files any more, use whatever the host has
+        fontFile = findFontFile(new File(System.getProperty("java.home"), "lib/fonts"));
+        if (fontFile == null) {
+            fontFile = findFontFile(new File("/usr/share/fonts"));
+        }
+        if (fontFile == null) {
+            fontFile = findFontFile(new File("/Library/Fonts"));
+        }
+        if (fontFile == null) {
+            fontFile = findFontFile(new File("C:\\Windows\\Fonts"));
+        }
+    }
+
+    @After
+    public void unregister() {
+        FontRegistry.shared().unregister(NAME);
+    }
+
+    @Test
+    public void rendersRegisteredFile() {
+        Assume.assumeNotNull(fontFile);
+        Font font = FontRegistry.shared().registerFile(NAME, fontFile);
+        Assert.assertSame(font, FontRegistry.shared().get(NAME));
+        Assert.assertTrue(FontRegistry.shared().getNames().contains(NAME));
+
+        // created fonts aren't known to the platform lookup by name, fitting must derive them
+        ImageProcessor.ImageTextSettings settings = TextFitter.fit("Registered", font, 300, 100);
+        Assert.assertEquals(font.getFontName(), settings.getFont().getFontName());
+        Assert.assertEquals(settings.getFontSize(), settings.getFont().getSize());
+
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("Registered")
+                .font(NAME)
+                .format(ImgTextProperties.IMG_FORMAT.PNG)
+                .generate()) {
+            Assert.assertTrue(jTxt2Img.write(new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void registersResources() throws IOException {
+        Assume.assumeNotNull(fontFile);
+        File directory = Files.createTempDirectory("jtxt2img-fonts").toFile();
+        File copy = new File(new File(directory, "fonts"), fontFile.getName());
+        Assert.assertTrue(copy.getParentFile().mkdir());
+        try (FileOutputStream outputStream = new FileOutputStream(copy)) {
+            Files.copy(fontFile.toPath(), outputStream);
+        }
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, previous)) {
+            thread.setContextClassLoader(classLoader);
+            Font font = FontRegistry.shared().registerResource(NAME, "/fonts/" + fontFile.getName());
+            Assert.assertEquals(FontRegistry.shared().registerFile(NAME, fontFile).getFontName(), font.getFontName());
+        } finally {
+            thread.setContextClassLoader(previous);
+            Assert.assertTrue(copy.delete() && copy.getParentFile().delete() && directory.delete());
+        }
+    }
+
+    @Test
+    public void separatesRegisteredFontsFromInstalledOnes() {
+        Assume.assumeNotNull(fontFile);
+        Font registered = FontRegistry.shared().registerFile(NAME, fontFile);
+        Font installed = new Font(registered.getName(), registered.getStyle(), registered.getSize());
+        Assert.assertTrue(FontRegistry.identity(registered).startsWith("file:" + fontFile.getAbsolutePath() + "@"));
+        Assert.assertEquals("fonts equal by name", installed, registered);
+        Assert.assertNull(FontRegistry.identity(installed));
+
+        FontMetricsCache cache = new FontMetricsCache(16);
+        ImageProcessor.ImageTextSettings settings = TextFitter.fit("Registered", installed, 300, 100);
+        cache.put(installed, "Registered", 300, 100, settings);
+        Assert.assertSame(settings, cache.get(installed, "Registered", 300, 100));
+        Assert.assertNull(cache.get(registered, "Registered", 300, 100));
+
+        Assert.assertNotEquals(EncodedImageCache.Key.of(RenderSpec.withText("Registered").font(installed)),
+                EncodedImageCache.Key.of(RenderSpec.withText("Registered").font(registered)));
+    }
+
+    @Test
+    public void missesReplacedFonts() {
+        Font font = new Font(Font.SANS_SERIF, Font.BOLD, 12);
+        FontRegistry.shared().register(NAME, font);
+        EncodedImageCache.Key key = EncodedImageCache.Key.of(RenderSpec.withText("Replaced").font(font));
+        FontMetricsCache cache = new FontMetricsCache(16);
+        cache.put(font, "Replaced", 300, 100, TextFitter.fit("Replaced", font, 300, 100));
+        String identity = FontRegistry.identity(font);
+
+        FontRegistry.shared().register(NAME, font);
+        Assert.assertNotEquals(identity, FontRegistry.identity(font));
+        Assert.assertNotEquals(key, EncodedImageCache.Key.of(RenderSpec.withText("Replaced").font(font)));
+        Assert.assertNull(cache.get(font, "Replaced", 300, 100));
+    }
+
+    @Test
+    public void derivesSizesOnce() {
+        Font font = new Font(Font.SANS_SERIF, Font.ITALIC, 12);
+        Font derived = FontRegistry.derive(font, 40);
+        Assert.assertEquals(40, derived.getSize());
+        Assert.assertEquals(font.getFontName(), derived.getFontName());
+        Assert.assertSame(derived, FontRegistry.derive(new Font(Font.SANS_SERIF, Font.ITALIC, 12), 40));
+        Assert.assertEquals(font, FontRegistry.derive(font, 12));
+        Assert.assertEquals(5000, FontRegistry.derive(font, 5000).getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownNames() {
+        JTxt2Img.withText("Unknown").font("not-registered");
+    }
+
+    @Test(expected = JTxt2ImgIoRuntimeException.class)
+    public void rejectsInvalidFiles() throws IOException {
+        File file = File.createTempFile("jtxt2img-font", ".ttf");
+        try {
+            FontRegistry.shared().registerFile(NAME, file);
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    private static File findFontFile(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            File found = file.isDirectory() ? findFontFile(file) : null;
+            if (found != null) {
+                return found;
+            }
+            if (file.getName().toLowerCase().endsWith(".ttf")) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextRenderer;
+import com.embedler.moon.jtxt2img.glyph.GlyphAtlas;
+import com.embedler.moon.jtxt2img.glyph.GlyphRenderer;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class GlyphRendererTest {
+
+    private static final String[] TEXTS = {"300x250", "Hello, World!", "1", "jtxt2img WAVE fi ff", "\u00dcn\u00efc\u00f8d\u00e9 \u20ac"};
+    private static final Font[] FONTS = {
+            new Font("Courier New Bold", Font.BOLD, 10),
+            new Font(Font.SERIF, Font.PLAIN, 10),
+            new Font(Font.SANS_SERIF, Font.ITALIC, 10),
+            new Font(Font.MONOSPACED, Font.BOLD | Font.ITALIC, 10)
+    };
+
+    @Test
+    public void matchesJava2D() {
+        String[] sizes = {"17x9", "120x60", "300x250", "1001x333"};
+        for (Font font : FONTS) {
+            for (String text : TEXTS) {
+                for (String size : sizes) {
+                    String[] wh = size.split("x");
+                    RenderSpec renderSpec = RenderSpec.withText(text)
+                            .size(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]))
+                            .font(font)
+                            .backgroundColor(0x112233)
+                            .foregroundColor(0xeeddcc)
+                            .format(ImgTextProperties.IMG_FORMAT.PNG);
+                    BufferedImage expected = ImageProcessor.forSpec(renderSpec.textRenderer(TextRenderer.JAVA2D)).createBufferedImage();
+                    BufferedImage actual = ImageProcessor.forSpec(renderSpec.textRenderer(TextRenderer.GLYPH_ATLAS)).createBufferedImage();
+                    TestImages.assertSamePixels(font + " " + text + " " + size, expected, actual);
+                    MappedImageFactory.release(expected);
+                    MappedImageFactory.release(actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clipsAtTheEdges() {
+        GlyphAtlas atlas = new GlyphAtlas(1024 * 1024);
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 40);
+        int[][] positions = {{-13, 10}, {-3, 45}, {50, 70}, {90, 20}, {0, 0}, {37, 99}};
+        for (StandardRasterStorage storage : new StandardRasterStorage[]{StandardRasterStorage.HEAP, StandardRasterStorage.DIRECT}) {
+            for (int[] position : positions) {
+                BufferedImage expected = createImage(storage);
+                Graphics2D g = expected.createGraphics();
+                g.setFont(font);
+                g.setColor(Color.WHITE);
+                g.drawString("Wgjy@", position[0], position[1]);
+                g.dispose();
+
+                BufferedImage actual = createImage(storage);
+                Assert.assertTrue(GlyphRenderer.drawString(actual, font, "Wgjy@", position[0], position[1], atlas));
+                TestImages.assertSamePixels(storage + " " + position[0] + "," + position[1], expected, actual);
+                MappedImageFactory.release(expected);
+                MappedImageFactory.release(actual);
+            }
+        }
+        Assert.assertTrue(atlas.getHitCount() > 0);
+    }
+
+    @Test
+    public void fallsBackForComplexText() {
+        BufferedImage image = createImage(StandardRasterStorage.HEAP);
+        Assert.assertFalse(GlyphRenderer.drawString(image, FONTS[1], "\u05e9\u05dc\u05d5\u05dd", 10, 50, GlyphAtlas.shared()));
+        Assert.assertFalse(GlyphRenderer.drawString(image, FONTS[1], "e\u0301", 10, 50, GlyphAtlas.shared()));
+    }
+
+    @Test
+    public void evictsOverCapacity() {
+        GlyphAtlas atlas = new GlyphAtlas(2048);
+        BufferedImage image = createImage(StandardRasterStorage.HEAP);
+        Assert.assertTrue(GlyphRenderer.drawString(image, new Font(Font.SERIF, Font.PLAIN, 60), "abcdefghij", 0, 60, atlas));
+        Assert.assertTrue(atlas.getBytes() <= 2048);
+        Assert.assertTrue(atlas.getEvictionCount() > 0);
+    }
+
+    private static BufferedImage createImage(StandardRasterStorage storage) {
+        return MappedImageFactory.createCompatibleMappedImage(101, 83, BufferedImage.TYPE_BYTE_BINARY,
+                new java.awt.image.IndexColorModel(1, 2, new byte[]{0, -1}, new byte[]{0, -1}, new byte[]{0, -1}), storage);
+    }
+}
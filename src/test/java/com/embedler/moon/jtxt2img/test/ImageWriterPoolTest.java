@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.encoder.ImageWriterPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class ImageWriterPoolTest {
+
+    @Test
+    public void reusesWriters() throws IOException {
+        ImageWriterPool pool = new ImageWriterPool(1);
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertTrue(pool.write(image, ImgTextProperties.IMG_FORMAT.JPG, out, EncodeOptions.DEFAULT));
+            Assert.assertNotNull(ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+            Assert.assertEquals(1, pool.getIdleCount(ImgTextProperties.IMG_FORMAT.JPG));
+        }
+    }
+
+    @Test
+    public void jpegQualityTradesSize() {
+        byte[] low = encode(ImgTextProperties.IMG_FORMAT.JPG, EncodeOptions.DEFAULT.jpegQuality(0.1f));
+        byte[] high = encode(ImgTextProperties.IMG_FORMAT.JPG, EncodeOptions.DEFAULT.jpegQuality(1f));
+        Assert.assertTrue(low.length < high.length);
+    }
+
+    @Test
+    public void progressiveOutputDecodes() throws IOException {
+        for (ImgTextProperties.IMG_FORMAT format : ImgTextProperties.IMG_FORMAT.values()) {
+            byte[] progressive = encode(format, EncodeOptions.DEFAULT.progressive(true));
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(progressive));
+            Assert.assertNotNull(format.toString(), decoded);
+            Assert.assertEquals(300, decoded.getWidth());
+        }
+    }
+
+    @Test
+    public void appliesEveryPngCompressionLevel() throws Exception {
+        BufferedImage image = new BufferedImage(120, 80, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 3) << 16 | (y * 2) << 8 | random.nextInt(8));
+            }
+        }
+        ImageWriterPool pool = new ImageWriterPool(1);
+        for (int level = 0; level <= 9; level++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertTrue(pool.write(image, ImgTextProperties.IMG_FORMAT.PNG, out, EncodeOptions.DEFAULT.pngCompressionLevel(level)));
+
+            // the zlib stream must be exactly what a deflater at that level makes of the scanlines
+            byte[] zlib = idat(out.toByteArray());
+            Inflater inflater = new Inflater();
+            inflater.setInput(zlib);
+            byte[] scanlines = new byte[image.getHeight() * (1 + image.getWidth() * 3)];
+            Assert.assertEquals(scanlines.length, inflater.inflate(scanlines));
+            inflater.end();
+
+            Deflater deflater = new Deflater(level);
+            deflater.setInput(scanlines);
+            deflater.finish();
+            byte[] expected = new byte[scanlines.length * 2 + 64];
+            int length = deflater.deflate(expected);
+            deflater.end();
+            Assert.assertArrayEquals("level " + level, Arrays.copyOf(expected, length), zlib);
+        }
+    }
+
+    private static byte[] idat(byte[] png) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(png, 8, png.length - 8));
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while (in.available() > 0) {
+            byte[] chunk = new byte[in.readInt()];
+            byte[] type = new byte[4];
+            in.readFully(type);
+            in.readFully(chunk);
+            in.readInt();
+            if (new String(type, "US-ASCII").equals("IDAT")) {
+                data.write(chunk);
+            }
+        }
+        return data.toByteArray();
+    }
+
+    private static byte[] encode(ImgTextProperties.IMG_FORMAT format, EncodeOptions encodeOptions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("300x250").format(format).width(300).height(250)
+                .encodeOptions(encodeOptions)
+                .generate()) {
+            jTxt2Img.write(out);
+        }
+        return out.toByteArray();
+    }
+}
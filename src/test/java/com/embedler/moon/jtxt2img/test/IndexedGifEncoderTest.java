@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.encoder.IndexedGifEncoder;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class IndexedGifEncoderTest {
+
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {8, 8}, {50, 90}, {301, 250}, {1000, 170}};
+
+    @Test
+    public void decodesToSamePixels() throws IOException {
+        for (RasterStorage storage : StandardRasterStorage.values()) {
+            for (int[] size : SIZES) {
+                BufferedImage image = TestImages.render(size[0], size[1], storage);
+                try {
+                    Assert.assertTrue(IndexedGifEncoder.canEncode(image));
+                    TestImages.assertSamePixels(storage + " " + size[0] + "x" + size[1], image, encodeAndDecode(image));
+                } finally {
+                    MappedImageFactory.release(image);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resetsCodeTableOnNoise() throws IOException {
+        byte[] map = {0, (byte) 255};
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(1, 2, map, map, map));
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, random.nextInt(2));
+            }
+        }
+        TestImages.assertSamePixels("noise", image, encodeAndDecode(image));
+    }
+
+    @Test
+    public void encodesDeeperPalettes() throws IOException {
+        for (int bits : new int[]{2, 4}) {
+            int size = 1 << bits;
+            byte[] map = new byte[size];
+            for (int i = 0; i < size; i++) {
+                map[i] = (byte) (i * 255 / (size - 1));
+            }
+            BufferedImage image = new BufferedImage(33, 20, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(bits, size, map, map, map));
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.getRaster().setSample(x, y, 0, (x * y) % size);
+                }
+            }
+            TestImages.assertSamePixels(bits + " bits", image, encodeAndDecode(image));
+        }
+    }
+
+    private static BufferedImage encodeAndDecode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexedGifEncoder.get().encode(image, out);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertNotNull(decoded);
+        return decoded;
+    }
+}
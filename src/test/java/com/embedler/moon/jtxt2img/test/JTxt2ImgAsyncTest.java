@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.async.RenderCallback;
+import com.embedler.moon.jtxt2img.async.RenderFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JTxt2ImgAsyncTest {
+
+    @Test
+    public void writesAsynchronously() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Boolean> callbackResult = new AtomicReference<>();
+
+        RenderFuture<Boolean> future = JTxt2Img.withText("async").width(120).height(60).writeAsync(outputStream);
+        future.addCallback(new RenderCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                callbackResult.set(result);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(future.get(30, TimeUnit.SECONDS));
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(Boolean.TRUE, callbackResult.get());
+        Assert.assertTrue(outputStream.size() > 0);
+    }
+
+    @Test
+    public void runsOnCallerExecutor() throws Exception {
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        JTxt2Img jTxt2Img = JTxt2Img.withText("direct");
+        RenderFuture<JTxt2Img> future = jTxt2Img.generateAsync(direct);
+        Assert.assertTrue(future.isDone());
+        Assert.assertSame(jTxt2Img, future.get());
+        jTxt2Img.close();
+    }
+
+    @Test
+    public void rejectionCompletesTheFuture() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1));
+        executor.shutdown();
+        RenderFuture<JTxt2Img> future = JTxt2Img.withText("rejected").generateAsync(executor);
+        try {
+            future.get();
+            Assert.fail("Rejected render must fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2ImgBatch;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JTxt2ImgBatchTest {
+
+    private File outputDirectory;
+
+    @Before
+    public void before() {
+        outputDirectory = new File(System.getenv("IMG_OUTPUT"), "batch");
+        outputDirectory.mkdirs();
+    }
+
+    @Test
+    public void rendersAllItemsAndReportsFailures() {
+        List<JTxt2ImgBatch.Item> items = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ImgTextProperties imgTextProperties = new ImgTextProperties();
+            imgTextProperties.setText(String.valueOf(i));
+            imgTextProperties.setWidth(20 + i);
+            imgTextProperties.setHeight(20 + i);
+            imgTextProperties.setFormat(ImgTextProperties.IMG_FORMAT.values()[i % ImgTextProperties.IMG_FORMAT.values().length]);
+            items.add(JTxt2ImgBatch.Item.toFile(imgTextProperties, new File(outputDirectory, "batch-" + i)));
+        }
+        items.add(10, JTxt2ImgBatch.Item.toFile(new ImgTextProperties(), new File(outputDirectory, "batch-invalid")));
+
+        JTxt2ImgBatch.Result result = JTxt2ImgBatch.create().parallelism(4).maxInFlight(3).run(items);
+
+        Assert.assertEquals(41, result.getItemCount());
+        Assert.assertEquals(40, result.getSucceeded());
+        Assert.assertEquals(1, result.getFailed());
+        Assert.assertEquals(10, result.getFailures().get(0).getIndex());
+        Assert.assertTrue(result.getBytesWritten() > 0);
+        for (int i = 0; i < 40; i++) {
+            Assert.assertTrue(new File(outputDirectory, "batch-" + i).length() > 0);
+        }
+    }
+
+    @Test
+    public void runsOnCallerExecutor() {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            ImgTextProperties imgTextProperties = new ImgTextProperties();
+            imgTextProperties.setText("stream");
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+            List<JTxt2ImgBatch.Item> items = new ArrayList<>();
+            items.add(JTxt2ImgBatch.Item.toStream(imgTextProperties, outputStream));
+
+            JTxt2ImgBatch.Result result = JTxt2ImgBatch.create().executor(executorService).run(items);
+            Assert.assertEquals(1, result.getSucceeded());
+            Assert.assertEquals(outputStream.size(), result.getBytesWritten());
+            Assert.assertFalse(executorService.isShutdown());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void recordsAndRethrowsErrors() throws InterruptedException {
+        final AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        final CountDownLatch rethrown = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        uncaught.set(e);
+                        rethrown.countDown();
+                    }
+                });
+                return thread;
+            }
+        });
+        try {
+            ImgTextProperties imgTextProperties = new ImgTextProperties();
+            imgTextProperties.setText("error");
+            List<JTxt2ImgBatch.Item> items = new ArrayList<>();
+            items.add(JTxt2ImgBatch.Item.toStream(imgTextProperties, new OutputStream() {
+                @Override
+                public void write(int b) {
+                    throw new RenderError();
+                }
+            }));
+            items.add(JTxt2ImgBatch.Item.toStream(imgTextProperties, new ByteArrayOutputStream()));
+
+            JTxt2ImgBatch.Result result = JTxt2ImgBatch.create().executor(executorService).run(items);
+            Assert.assertEquals(1, result.getSucceeded());
+            Assert.assertEquals(1, result.getFailed());
+            Assert.assertTrue(result.getFailures().get(0).getException() instanceof RenderError);
+            Assert.assertTrue(rethrown.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(uncaught.get() instanceof RenderError);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static final class RenderError extends Error {
+        private static final long serialVersionUID = 1L;
+    }
+}
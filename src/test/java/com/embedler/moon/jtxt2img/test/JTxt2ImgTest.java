@@ -21,11 +21,18 @@ package com.embedler.moon.jtxt2img.test;
 
 import com.embedler.moon.jtxt2img.ImgTextProperties;
 import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.JTxt2ImgIoRuntimeException;
+import com.embedler.moon.jtxt2img.io.PooledByteBuffer;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.awt.*;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.text.MessageFormat;
 
 public class JTxt2ImgTest {
@@ -53,7 +60,9 @@ public class JTxt2ImgTest {
             String name = String.valueOf(1);
             imgTextProperties.setText(name);
             File file = new File(outputDirectory, "file-" + i);
-            JTxt2Img.withProperties(imgTextProperties).generate().write(file);
+            try (JTxt2Img jTxt2Img = JTxt2Img.withProperties(imgTextProperties).generate()) {
+                jTxt2Img.write(file);
+            }
         }
     }
 
@@ -68,16 +77,64 @@ public class JTxt2ImgTest {
             String fileName = MessageFormat.format("image-{0}.{1}", i, ImgTextProperties.IMG_FORMAT.JPG.toString().toLowerCase());
             File file = new File(outputDirectory, fileName);
 
-            JTxt2Img.withText(String.valueOf(i))
+            try (JTxt2Img jTxt2Img = JTxt2Img.withText(String.valueOf(i))
                     .backgroundColor("487")
                     .foregroundColor("278")
                     .format(ImgTextProperties.IMG_FORMAT.JPG)
                     .width(50)
                     .font(Font.getFont(Font.MONOSPACED))
                     .height(90)
-                    .generate()
-                    .write(file);
+                    .generate()) {
+                jTxt2Img.write(file);
+            }
         }
 
     }
+
+    @Test
+    public void closeableBuilderTest() {
+
+        new File(outputDirectory).mkdirs();
+        File file = new File(outputDirectory, "image-closeable.png");
+
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("closeable")
+                .format(ImgTextProperties.IMG_FORMAT.PNG)
+                .rasterStorage(StandardRasterStorage.MAPPED)
+                .generate()) {
+            jTxt2Img.write(file);
+        }
+    }
+
+    @Test
+    public void nioOutputTest() {
+        for (ImgTextProperties.IMG_FORMAT format : ImgTextProperties.IMG_FORMAT.values()) {
+            try (JTxt2Img jTxt2Img = JTxt2Img.withText("nio").format(format).width(120).height(60).generate()) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                jTxt2Img.write(expected);
+
+                ByteArrayOutputStream channelOutput = new ByteArrayOutputStream();
+                Assert.assertTrue(jTxt2Img.write(Channels.newChannel(channelOutput)));
+                Assert.assertArrayEquals(expected.toByteArray(), channelOutput.toByteArray());
+
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                buffer.put((byte) 1);
+                int length = jTxt2Img.writeTo(buffer);
+                Assert.assertEquals(expected.size(), length);
+                Assert.assertEquals(1 + length, buffer.position());
+
+                try (PooledByteBuffer pooled = jTxt2Img.encodeToPooledBuffer()) {
+                    byte[] bytes = new byte[pooled.size()];
+                    pooled.buffer().get(bytes);
+                    Assert.assertArrayEquals(expected.toByteArray(), bytes);
+                }
+            }
+        }
+    }
+
+    @Test(expected = JTxt2ImgIoRuntimeException.class)
+    public void bufferTooSmallTest() {
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("small").generate()) {
+            jTxt2Img.writeTo(ByteBuffer.allocate(10));
+        }
+    }
 }
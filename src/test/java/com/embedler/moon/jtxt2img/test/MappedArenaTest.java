@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.mmap.MappedArena;
+import com.embedler.moon.jtxt2img.mmap.NioDataBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.DataBuffer;
+import java.io.File;
+
+public class MappedArenaTest {
+
+    private static final File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    @Test
+    public void carvesSizeClassedSlabs() {
+        MappedArena arena = new MappedArena(TMP_DIR, 64 * 1024, 128 * 1024);
+
+        NioDataBuffer small = arena.allocate(DataBuffer.TYPE_BYTE, 100, 1);
+        NioDataBuffer large = arena.allocate(DataBuffer.TYPE_INT, 3000, 1);
+        Assert.assertNotNull(small);
+        Assert.assertNotNull(large);
+        Assert.assertNull(arena.allocate(DataBuffer.TYPE_BYTE, 64 * 1024 + 1, 1));
+
+        MappedArena.Statistics statistics = arena.getStatistics();
+        Assert.assertEquals(1, statistics.getChunkCount());
+        Assert.assertEquals(4096 + 16384, statistics.getUsedBytes());
+        Assert.assertEquals(100 + 12000, statistics.getRequestedBytes());
+        Assert.assertEquals(1, statistics.getSlabsInUse()[0]);
+        Assert.assertEquals(1, statistics.getSlabsInUse()[2]);
+
+        small.setElem(99, 0xff);
+        Assert.assertEquals(0xff, small.getElem(99));
+        Assert.assertTrue(small.release() && large.release());
+    }
+
+    @Test
+    public void respectsSizeCap() {
+        MappedArena arena = new MappedArena(TMP_DIR, 8192, 16384);
+
+        NioDataBuffer first = arena.allocate(DataBuffer.TYPE_BYTE, 8192, 1);
+        NioDataBuffer second = arena.allocate(DataBuffer.TYPE_BYTE, 8192, 1);
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertNull(arena.allocate(DataBuffer.TYPE_BYTE, 8192, 1));
+        Assert.assertEquals(2, arena.getStatistics().getChunkCount());
+        Assert.assertEquals(1.0, arena.getStatistics().getUtilisation(), 0.0);
+        Assert.assertTrue(first.release() && second.release());
+    }
+}
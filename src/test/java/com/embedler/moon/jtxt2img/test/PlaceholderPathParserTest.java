@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.PlaceholderPathParser;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+
+public class PlaceholderPathParserTest {
+
+    @Test
+    public void parsesFullPath() {
+        RenderSpec renderSpec = PlaceholderPathParser.parse("/300x250/ff0000/000/Hello%20World.gif");
+        Assert.assertEquals(300, renderSpec.getWidth());
+        Assert.assertEquals(250, renderSpec.getHeight());
+        Assert.assertEquals(0xff0000, renderSpec.getBackgroundColor());
+        Assert.assertEquals(0x000000, renderSpec.getForegroundColor());
+        Assert.assertEquals("Hello World", renderSpec.getText());
+        Assert.assertEquals(ImgTextProperties.IMG_FORMAT.GIF, renderSpec.getFormat());
+    }
+
+    @Test
+    public void appliesDefaults() {
+        RenderSpec renderSpec = PlaceholderPathParser.parse("120");
+        Assert.assertEquals(120, renderSpec.getWidth());
+        Assert.assertEquals(120, renderSpec.getHeight());
+        Assert.assertEquals("120x120", renderSpec.getText());
+        Assert.assertEquals(ImgTextProperties.IMG_FORMAT.PNG, renderSpec.getFormat());
+
+        renderSpec = PlaceholderPathParser.parse("/64x32.JPEG");
+        Assert.assertEquals(32, renderSpec.getHeight());
+        Assert.assertEquals(ImgTextProperties.IMG_FORMAT.JPG, renderSpec.getFormat());
+
+        RenderSpec base = RenderSpec.withText("base").font(new Font("Serif", Font.PLAIN, 12));
+        renderSpec = PlaceholderPathParser.parse("/10x10/abc/", base);
+        Assert.assertEquals(base.getFont(), renderSpec.getFont());
+        Assert.assertEquals("10x10", renderSpec.getText());
+    }
+
+    @Test
+    public void matchesRegexColors() {
+        for (String color : new String[]{"abc", "0F0", "a1b2c3"}) {
+            RenderSpec renderSpec = PlaceholderPathParser.parse("/10/" + color + "/" + color);
+            int expected = CoreHelper.hex2Rgb(color).getRGB() & 0xffffff;
+            Assert.assertEquals(expected, renderSpec.getBackgroundColor());
+            Assert.assertEquals(expected, renderSpec.getForegroundColor());
+        }
+        Assert.assertEquals("file.txt", PlaceholderPathParser.parse("/10/file.txt").getText());
+    }
+
+    @Test
+    public void rejectsInvalidPaths() {
+        String[] invalid = {"", "/", "/x10", "/3501x10", "/10x3501", "/0x10", "/10x10.png/fff", "/10/fff/000/a/b",
+                "/999999999999x1", "/10/" + new String(new char[PlaceholderPathParser.MAX_TEXT_LENGTH + 1]).replace('\0', 'a')};
+        for (String path : invalid) {
+            try {
+                PlaceholderPathParser.parse(path);
+                Assert.fail("Path must be rejected: " + path);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void keepsOwnSizeLimit() {
+        try {
+            CoreHelper.setMaxSize(20000, 20000);
+            try {
+                PlaceholderPathParser.parse("/20000x1");
+                Assert.fail("Path beyond the parser limit must be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            Assert.assertEquals(20000, PlaceholderPathParser.parse("/20000x1", null, 20000, 20000).getWidth());
+        } finally {
+            CoreHelper.setMaxSize(CoreHelper.DEF_PLACEHOLDER_MAX_WIDTH, CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT);
+        }
+        try {
+            PlaceholderPathParser.parse("/4000x1", null, 20000, 20000);
+            Assert.fail("Path beyond the library limit must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
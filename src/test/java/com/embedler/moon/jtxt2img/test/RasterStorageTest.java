@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.mmap.AdaptiveRasterStorage;
+import com.embedler.moon.jtxt2img.mmap.MappedImageFactory;
+import com.embedler.moon.jtxt2img.mmap.NioDataBuffer;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+public class RasterStorageTest {
+
+    @Test
+    public void adaptiveSelectsBySize() {
+        AdaptiveRasterStorage storage = new AdaptiveRasterStorage(100, 1000);
+
+        Assert.assertEquals(StandardRasterStorage.HEAP, storage.select(99));
+        Assert.assertEquals(StandardRasterStorage.DIRECT, storage.select(100));
+        Assert.assertEquals(StandardRasterStorage.MAPPED, storage.select(1000));
+
+        Assert.assertTrue(storage.createDataBuffer(java.awt.image.DataBuffer.TYPE_BYTE, 10, 1) instanceof DataBufferByte);
+        java.awt.image.DataBuffer direct = storage.createDataBuffer(java.awt.image.DataBuffer.TYPE_INT, 100, 1);
+        Assert.assertTrue(direct instanceof NioDataBuffer);
+        ((NioDataBuffer) direct).release();
+    }
+
+    @Test
+    public void storagesRenderSamePixels() {
+        // an odd width, so rows don't end on a word boundary
+        BufferedImage expected = TestImages.render(301, 250, StandardRasterStorage.HEAP);
+        for (RasterStorage storage : StandardRasterStorage.values()) {
+            BufferedImage actual = TestImages.render(301, 250, storage);
+            try {
+                TestImages.assertSamePixels(storage.toString(), expected, actual);
+            } finally {
+                MappedImageFactory.release(actual);
+            }
+        }
+    }
+
+    @Test
+    public void releasesOffHeapRasters() {
+        for (RasterStorage storage : StandardRasterStorage.values()) {
+            BufferedImage image = TestImages.render(301, 250, storage);
+            boolean offHeap = storage != StandardRasterStorage.HEAP;
+
+            Assert.assertEquals(storage.toString(), offHeap, MappedImageFactory.release(image));
+            Assert.assertFalse(MappedImageFactory.release(image));
+            if (offHeap) {
+                Assert.assertTrue(((NioDataBuffer) image.getRaster().getDataBuffer()).isReleased());
+            }
+        }
+    }
+}
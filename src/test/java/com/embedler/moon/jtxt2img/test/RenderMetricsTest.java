@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetricsAdapter;
+import com.embedler.moon.jtxt2img.mmap.StandardRasterStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class RenderMetricsTest {
+
+    @After
+    public void after() {
+        Metrics.set(null);
+    }
+
+    @Test
+    public void reportsStagesSizesAndCacheAccess() {
+        Recorder recorder = new Recorder();
+        Metrics.set(recorder);
+        Assert.assertTrue(Metrics.isEnabled());
+
+        EncodedImageCache cache = new EncodedImageCache(1024 * 1024);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withText("metrics-" + System.nanoTime())
+                .width(200)
+                .height(100)
+                .format(ImgTextProperties.IMG_FORMAT.PNG)
+                .rasterStorage(StandardRasterStorage.HEAP)
+                .cache(cache)
+                .generate()) {
+            jTxt2Img.write(outputStream);
+        }
+
+        for (RenderMetrics.Stage stage : RenderMetrics.Stage.values()) {
+            Assert.assertEquals(stage.name(), 1, recorder.stages.get(stage).intValue());
+        }
+        Assert.assertTrue(recorder.fitMeasurements > 0);
+        Assert.assertEquals(Long.valueOf(25 * 100), recorder.rasterBytes.get(StandardRasterStorage.HEAP));
+        Assert.assertEquals(outputStream.size(), recorder.encodedBytes);
+        Assert.assertEquals(1, recorder.misses.get(RenderMetrics.Cache.FONT_METRICS).intValue());
+        Assert.assertEquals(1, recorder.misses.get(RenderMetrics.Cache.ENCODED_IMAGE).intValue());
+    }
+
+    @Test
+    public void disabledByDefault() {
+        Assert.assertFalse(Metrics.isEnabled());
+        Assert.assertEquals(0L, Metrics.startTime());
+    }
+
+    private static final class Recorder extends RenderMetricsAdapter {
+        final Map<RenderMetrics.Stage, Integer> stages = new EnumMap<>(RenderMetrics.Stage.class);
+        final Map<StandardRasterStorage, Long> rasterBytes = new EnumMap<>(StandardRasterStorage.class);
+        final Map<RenderMetrics.Cache, Integer> misses = new EnumMap<>(RenderMetrics.Cache.class);
+        int fitMeasurements;
+        long encodedBytes;
+
+        @Override
+        public void stageCompleted(Stage stage, long nanos) {
+            Assert.assertTrue(nanos >= 0);
+            stages.put(stage, stages.containsKey(stage) ? stages.get(stage) + 1 : 1);
+        }
+
+        @Override
+        public void fitCompleted(int measurements) {
+            fitMeasurements += measurements;
+        }
+
+        @Override
+        public void rasterAllocated(StandardRasterStorage storage, long bytes) {
+            rasterBytes.put(storage, rasterBytes.containsKey(storage) ? rasterBytes.get(storage) + bytes : bytes);
+        }
+
+        @Override
+        public void encoded(ImgTextProperties.IMG_FORMAT format, long bytes) {
+            encodedBytes += bytes;
+        }
+
+        @Override
+        public void cacheMiss(Cache cache) {
+            misses.put(cache, misses.containsKey(cache) ? misses.get(cache) + 1 : 1);
+        }
+    }
+}
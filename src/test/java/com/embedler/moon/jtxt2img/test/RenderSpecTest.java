@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.cache.EncodedImageCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class RenderSpecTest {
+
+    @Test
+    public void resolvesPropertiesOnce() {
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setText("spec");
+        imgTextProperties.setWidth(200);
+        imgTextProperties.setHeight(5000);
+        imgTextProperties.setBgColor("ff0000");
+        imgTextProperties.setFgColor("not a color");
+
+        RenderSpec renderSpec = RenderSpec.of(imgTextProperties);
+        Assert.assertEquals("spec", renderSpec.getText());
+        Assert.assertEquals(200, renderSpec.getWidth());
+        Assert.assertEquals(250, renderSpec.getHeight());
+        // background doesn't depend on the foreground being valid
+        Assert.assertEquals(0xff0000, renderSpec.getBackgroundColor());
+        Assert.assertEquals(0x000000, renderSpec.getForegroundColor());
+        Assert.assertEquals(ImgTextProperties.IMG_FORMAT.JPG, renderSpec.getFormat());
+    }
+
+    @Test
+    public void equivalentSpecsAreEqual() {
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setText("equal");
+        imgTextProperties.setWidth(120);
+        imgTextProperties.setHeight(80);
+        imgTextProperties.setBgColor("00ff00");
+        imgTextProperties.setFormat(ImgTextProperties.IMG_FORMAT.PNG);
+
+        RenderSpec built = RenderSpec.withText("equal").size(120, 80).backgroundColor(0x00ff00).format(ImgTextProperties.IMG_FORMAT.PNG);
+        Assert.assertEquals(RenderSpec.of(imgTextProperties), built);
+        Assert.assertEquals(RenderSpec.of(imgTextProperties).hashCode(), built.hashCode());
+        Assert.assertEquals(built, RenderSpec.of(built.toProperties()));
+        Assert.assertEquals(EncodedImageCache.Key.of(built), EncodedImageCache.Key.of(RenderSpec.of(imgTextProperties)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutOfRangeSize() {
+        RenderSpec.withText("big").size(10000, 10);
+    }
+
+    @Test
+    public void rendersFromSpec() {
+        RenderSpec renderSpec = RenderSpec.withText("shared").size(160, 90).format(ImgTextProperties.IMG_FORMAT.PNG);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(renderSpec).generate()) {
+            Assert.assertTrue(jTxt2Img.write(first));
+        }
+        try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(renderSpec).generate()) {
+            Assert.assertTrue(jTxt2Img.write(second));
+        }
+        Assert.assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+}
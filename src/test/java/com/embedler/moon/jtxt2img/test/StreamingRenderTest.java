@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.EncodeOptions;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.PlaceholderPathParser;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextRenderer;
+import com.embedler.moon.jtxt2img.metrics.Metrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetrics;
+import com.embedler.moon.jtxt2img.metrics.RenderMetricsAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class StreamingRenderTest {
+
+    private static final int[] STRIP_HEIGHTS = {1, 7, 64, 1000};
+
+    @Test
+    public void streamsSameBytesAsFullRender() {
+        for (ImgTextProperties.IMG_FORMAT format : new ImgTextProperties.IMG_FORMAT[]{ImgTextProperties.IMG_FORMAT.PNG, ImgTextProperties.IMG_FORMAT.GIF}) {
+            for (TextRenderer textRenderer : TextRenderer.values()) {
+                for (int[] size : new int[][]{{301, 250}, {40, 600}}) {
+                    RenderSpec spec = RenderSpec.withText("Strip " + size[0])
+                            .size(size[0], size[1])
+                            .backgroundColor(0x1e90ff)
+                            .foregroundColor(0xffcc00)
+                            .font(new Font(Font.SANS_SERIF, Font.ITALIC, 12))
+                            .format(format)
+                            .textRenderer(textRenderer);
+
+                    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                    try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(spec).generate()) {
+                        Assert.assertTrue(jTxt2Img.write(expected));
+                    }
+                    for (int stripHeight : STRIP_HEIGHTS) {
+                        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                        Assert.assertTrue(JTxt2Img.withSpec(spec).writeStreaming(actual, stripHeight));
+                        Assert.assertArrayEquals(spec + " strip " + stripHeight, expected.toByteArray(), actual.toByteArray());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamsImagesBeyondDefaultLimits() throws IOException {
+        try {
+            CoreHelper.setMaxSize(20000, CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertTrue(JTxt2Img.withSpec(PlaceholderPathParser.parse("/20000x300/Wide.gif", null, 20000, 300)).writeStreaming(out));
+
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            Assert.assertEquals(20000, image.getWidth());
+            Assert.assertEquals(300, image.getHeight());
+        } finally {
+            CoreHelper.setMaxSize(CoreHelper.DEF_PLACEHOLDER_MAX_WIDTH, CoreHelper.DEF_PLACEHOLDER_MAX_HEIGHT);
+        }
+        try {
+            RenderSpec.withText("Wide").size(20000, 300);
+            Assert.fail("Width beyond the default limit must be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void refusesFormatsWithoutRowEncoder() {
+        Assert.assertFalse(JTxt2Img.withText("JPEG").format(ImgTextProperties.IMG_FORMAT.JPG).writeStreaming(new ByteArrayOutputStream()));
+        Assert.assertFalse(JTxt2Img.withText("Interlaced").format(ImgTextProperties.IMG_FORMAT.PNG)
+                .encodeOptions(EncodeOptions.DEFAULT.progressive(true))
+                .writeStreaming(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void releasesEncodersAfterFailedStream() {
+        for (ImgTextProperties.IMG_FORMAT format : new ImgTextProperties.IMG_FORMAT[]{ImgTextProperties.IMG_FORMAT.PNG, ImgTextProperties.IMG_FORMAT.GIF}) {
+            Metrics.set(new RenderMetricsAdapter() {
+                @Override
+                public void stageCompleted(RenderMetrics.Stage stage, long nanos) {
+                    if (stage == RenderMetrics.Stage.DRAW) {
+                        throw new IllegalStateException("Draw failed");
+                    }
+                }
+            });
+            try {
+                JTxt2Img.withText("Failing").format(format).writeStreaming(new ByteArrayOutputStream(), 16);
+                Assert.fail("Metrics failure must propagate");
+            } catch (RuntimeException e) {
+            } finally {
+                Metrics.set(null);
+            }
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            Assert.assertTrue(JTxt2Img.withText("Recovered").format(format).writeStreaming(streamed, 16));
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            try (JTxt2Img jTxt2Img = JTxt2Img.withText("Recovered").format(format).generate()) {
+                Assert.assertTrue(jTxt2Img.write(written));
+            }
+            Assert.assertArrayEquals(format.name(), written.toByteArray(), streamed.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.mmap.RasterStorage;
+import org.junit.Assert;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Images and pixel assertions shared by the encoder and renderer tests.
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * Renders a placeholder with its size as text, the same for every encoder test.
+     */
+    static BufferedImage render(int width, int height, RasterStorage storage) {
+        ImgTextProperties imgTextProperties = new ImgTextProperties();
+        imgTextProperties.setText(width + "x" + height);
+        imgTextProperties.setBgColor("1e90ff");
+        imgTextProperties.setFgColor("fc0");
+        imgTextProperties.setWidth(width);
+        imgTextProperties.setHeight(height);
+        imgTextProperties.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        imgTextProperties.setRasterStorage(storage);
+        return ImageProcessor.forProperties(imgTextProperties).createBufferedImage();
+    }
+
+    static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual) {
+        Assert.assertEquals(message, expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(message, expected.getHeight(), actual.getHeight());
+        int width = expected.getWidth();
+        int[] expectedRow = new int[width];
+        int[] actualRow = new int[width];
+        for (int y = 0; y < expected.getHeight(); y++) {
+            expected.getRGB(0, y, width, 1, expectedRow, 0, width);
+            actual.getRGB(0, y, width, 1, actualRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (expectedRow[x] != actualRow[x]) {
+                    Assert.fail(message + ": pixel " + x + "," + y + " differs, expected "
+                            + Integer.toHexString(expectedRow[x]) + " but was " + Integer.toHexString(actualRow[x]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.TextFitter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+public class TextFitterTest {
+
+    private static final String[] TEXTS = {"1", "42", "300x250", "Hello world", "The quick brown fox jumps over the lazy dog", "W"};
+    private static final int[] SIZES = {1, 5, 10, 33, 50, 90, 128, 250, 300, 1024, 3500};
+    private static final Font[] FONTS = {
+            CoreHelper.DEF_PLACEHOLDER_FONT,
+            new Font(Font.MONOSPACED, Font.PLAIN, 12),
+            new Font(Font.SANS_SERIF, Font.ITALIC, 12),
+            new Font(Font.SERIF, Font.BOLD, 12)
+    };
+
+    @Test
+    public void matchesLinearDescent() {
+        for (Font font : FONTS) {
+            for (String text : TEXTS) {
+                for (int w : SIZES) {
+                    for (int h : SIZES) {
+                        ImageProcessor.ImageTextSettings expected = linearFit(text, font, w, h);
+                        ImageProcessor.ImageTextSettings actual = TextFitter.fit(text, font, w, h);
+
+                        String msg = String.format("%s '%s' %dx%d", font.getFontName(), text, w, h);
+                        Assert.assertEquals(msg, expected.getFontSize(), actual.getFontSize());
+                        Assert.assertEquals(msg, expected.getFont(), actual.getFont());
+                        Assert.assertEquals(msg, expected.getTextBounds(), actual.getTextBounds());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyTextFitsAtMaximumSize() {
+        ImageProcessor.ImageTextSettings settings = TextFitter.fit("", CoreHelper.DEF_PLACEHOLDER_FONT, 10, 1000);
+        Assert.assertEquals(linearFit("", CoreHelper.DEF_PLACEHOLDER_FONT, 10, 1000).getFontSize(), settings.getFontSize());
+    }
+
+    private static ImageProcessor.ImageTextSettings linearFit(String text, Font font, int w, int h) {
+        BufferedImage bufferedImage = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = bufferedImage.createGraphics();
+
+        Rectangle2D rect;
+        int fontSize = CoreHelper.DEF_PLACEHOLDER_FONT_SIZE;
+        Font fontIterator;
+        do {
+            fontSize--;
+            fontIterator = font.deriveFont((float) fontSize);
+            g.setFont(fontIterator);
+            rect = g.getFontMetrics().getStringBounds(text, g);
+        } while ((rect.getWidth() >= w || rect.getHeight() >= h) && (fontSize > 1));
+        g.dispose();
+
+        return new ImageProcessor.ImageTextSettings(fontIterator, fontSize, rect);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImageProcessor;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextFitter;
+import com.embedler.moon.jtxt2img.TextWrap;
+import com.embedler.moon.jtxt2img.TextWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.io.ByteArrayOutputStream;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextWrapperTest {
+
+    private static final String LONG_TEXT = "The quick brown fox jumps over the lazy dog";
+    private static final int[][] SIZES = {{300, 250}, {120, 600}, {640, 90}, {50, 50}};
+    private static final Font[] FONTS = {
+            CoreHelper.DEF_PLACEHOLDER_FONT,
+            new Font(Font.SANS_SERIF, Font.ITALIC, 12),
+            new Font(Font.SERIF, Font.PLAIN, 12)
+    };
+
+    @Test
+    public void wrapsWithLargestFittingFont() {
+        for (Font font : FONTS) {
+            for (int[] size : SIZES) {
+                String msg = String.format("%s %dx%d", font.getFontName(), size[0], size[1]);
+                ImageProcessor.ImageTextSettings settings = TextWrapper.fit(LONG_TEXT, font, size[0], size[1]);
+                TextWrapper.Lines lines = settings.getLines();
+                Assert.assertNotNull(msg, lines);
+                Assert.assertFalse(msg, lines.isSplittingWords());
+                Assert.assertTrue(msg, lines.getMaxWidth() < size[0]);
+                Assert.assertTrue(msg, lines.getHeight() < size[1]);
+                Assert.assertTrue(msg, settings.getFontSize() >= TextFitter.fit(LONG_TEXT, font, size[0], size[1]).getFontSize());
+
+                // no size above the chosen one lays out inside the box
+                for (int fontSize = settings.getFontSize() + 1; fontSize <= settings.getFontSize() + 3; fontSize++) {
+                    TextWrapper.Lines larger = TextWrapper.breakLines(LONG_TEXT, font.deriveFont((float) fontSize), size[0]);
+                    Assert.assertFalse(msg + " at " + fontSize, !larger.isSplittingWords()
+                            && larger.getMaxWidth() < size[0] && larger.getHeight() < size[1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void linesCoverWholeText() {
+        TextWrapper.Lines lines = TextWrapper.breakLines(LONG_TEXT, new Font(Font.SANS_SERIF, Font.PLAIN, 20), 150);
+        Assert.assertTrue(lines.getLineCount() > 1);
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            joined.append(i > 0 ? " " : "").append(lines.getLine(i));
+        }
+        Assert.assertEquals(LONG_TEXT, joined.toString());
+        Assert.assertSame(lines, TextWrapper.breakLines(LONG_TEXT, new Font(Font.SANS_SERIF, Font.PLAIN, 20), 150));
+    }
+
+    @Test
+    public void breaksLikeLineBreakMeasurer() {
+        String[] texts = {LONG_TEXT, "Hello,  wide   world! 300x250 placeholder", "Incomprehensibilities are hard to wrap"};
+        for (Font font : FONTS) {
+            for (String text : texts) {
+                for (int wrapWidth : new int[]{40, 150, 400}) {
+                    Font sized = font.deriveFont(24f);
+                    AttributedString attributedString = new AttributedString(text);
+                    attributedString.addAttribute(TextAttribute.FONT, sized);
+                    LineBreakMeasurer measurer = new LineBreakMeasurer(attributedString.getIterator(), new FontRenderContext(null, false, false));
+                    List<String> expected = new ArrayList<>();
+                    while (measurer.getPosition() < text.length()) {
+                        int start = measurer.getPosition();
+                        int limit = measurer.nextOffset(wrapWidth);
+                        measurer.setPosition(limit);
+                        expected.add(text.substring(start, limit).replaceAll("\\s+$", ""));
+                    }
+
+                    TextWrapper.Lines lines = TextWrapper.breakLines(text, sized, wrapWidth);
+                    List<String> actual = new ArrayList<>();
+                    for (int i = 0; i < lines.getLineCount(); i++) {
+                        actual.add(lines.getLine(i));
+                    }
+                    Assert.assertEquals(font.getFontName() + " " + wrapWidth, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void alignsLines() {
+        byte[][] images = new byte[TextWrap.values().length][];
+        for (TextWrap textWrap : TextWrap.values()) {
+            RenderSpec spec = RenderSpec.withText("A a long line of words")
+                    .size(200, 200)
+                    .format(ImgTextProperties.IMG_FORMAT.PNG)
+                    .textWrap(textWrap);
+            ByteArrayOutputStream full = new ByteArrayOutputStream();
+            try (JTxt2Img jTxt2Img = JTxt2Img.withSpec(spec).generate()) {
+                Assert.assertTrue(jTxt2Img.write(full));
+            }
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            Assert.assertTrue(JTxt2Img.withSpec(spec).writeStreaming(streamed, 16));
+            Assert.assertArrayEquals(textWrap.name(), full.toByteArray(), streamed.toByteArray());
+            images[textWrap.ordinal()] = full.toByteArray();
+        }
+        for (int i = 0; i < images.length; i++) {
+            for (int j = i + 1; j < images.length; j++) {
+                Assert.assertFalse(TextWrap.values()[i] + " " + TextWrap.values()[j], Arrays.equals(images[i], images[j]));
+            }
+        }
+    }
+
+    @Test
+    public void splitsWordsOnlyAtMinimumSize() {
+        ImageProcessor.ImageTextSettings settings = TextWrapper.fit("Incomprehensibilities", CoreHelper.DEF_PLACEHOLDER_FONT, 3, 3);
+        Assert.assertEquals(1, settings.getFontSize());
+        Assert.assertTrue(settings.getLines().getLineCount() >= 1);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Oembedler Inc. and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ *  documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ *  rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ *  persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.embedler.moon.jtxt2img.test;
+
+import com.embedler.moon.jtxt2img.CoreHelper;
+import com.embedler.moon.jtxt2img.ImgTextProperties;
+import com.embedler.moon.jtxt2img.JTxt2Img;
+import com.embedler.moon.jtxt2img.RenderSpec;
+import com.embedler.moon.jtxt2img.TextRenderer;
+import com.embedler.moon.jtxt2img.WarmUp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+public class WarmUpTest {
+
+    @Test
+    public void reportsEveryPhase() {
+        WarmUp.Report report = WarmUp.create()
+                .fonts(CoreHelper.DEF_PLACEHOLDER_FONT, new Font(Font.SERIF, Font.BOLD, 12))
+                .formats(ImgTextProperties.IMG_FORMAT.PNG, ImgTextProperties.IMG_FORMAT.AUTO)
+                .iterations(5)
+                .run();
+        long total = 0;
+        for (WarmUp.Phase phase : WarmUp.Phase.values()) {
+            Assert.assertTrue(phase.name(), report.getNanos(phase) > 0);
+            total += report.getNanos(phase);
+        }
+        Assert.assertEquals(total, report.getTotalNanos());
+        Assert.assertEquals(5 * 2 * 2, report.getRenders());
+        Assert.assertTrue(report.toString(), report.toString().contains("render="));
+    }
+
+    @Test
+    public void defaultsToCommonFormats() {
+        WarmUp.Report report = WarmUp.create()
+                .baseSpec(RenderSpec.withText("Base").textRenderer(TextRenderer.GLYPH_ATLAS))
+                .iterations(2)
+                .run();
+        Assert.assertEquals(2 * 3, report.getRenders());
+    }
+
+    @Test
+    public void runsAsync() throws Exception {
+        WarmUp.Report report = JTxt2Img.warmUpAsync().get(1, TimeUnit.MINUTES);
+        Assert.assertEquals(WarmUp.DEF_ITERATIONS * 3, report.getRenders());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeIterations() {
+        WarmUp.create().iterations(-1);
+    }
+}